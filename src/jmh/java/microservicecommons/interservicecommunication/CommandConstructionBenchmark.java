@@ -0,0 +1,46 @@
+package microservicecommons.interservicecommunication;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * cost of creating a command for every call, without executing it, directly and from a CommandTemplate.
+ * Run with -prof gc for the allocations per call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandConstructionBenchmark {
+
+    public static class Entity {
+        public long id;
+    }
+
+    private final CommandTemplate<Entity> template = CommandTemplate.of("getEntity", "http://localhost:8080/entities?id={id}", Entity.class);
+
+    private final long id = 4711;
+
+    @Benchmark
+    public MicroserviceQueryCommand<Entity> newCommand() throws MalformedURLException {
+        return new MicroserviceQueryCommand<>("getEntity", new URL("http://localhost:8080/entities?id=" + id), Entity.class, false);
+    }
+
+    @Benchmark
+    public MicroserviceQueryCommand<Entity> fromTemplate() {
+        return template.create(id);
+    }
+}
@@ -0,0 +1,61 @@
+package microservicecommons.interservicecommunication;
+
+import com.netflix.hystrix.Hystrix;
+import microservice.interservicecommunication.stub.StubHttpServer;
+import microservicecommons.interservicecommunication.json.DeserializationBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * end-to-end latency of execute() against an in-process stub server, including hystrix, the http transport and
+ * deserialization. Sample mode reports percentiles, so regressions in the tail show up as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class ExecuteBenchmark {
+
+    @Param({"1", "1000"})
+    public int entities;
+
+    private StubHttpServer server;
+
+    private URL url;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = new StubHttpServer().respond("/entities", 200, DeserializationBenchmark.jsonArray(entities));
+        url = server.url("/entities");
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.close();
+        // stops the hystrix thread pools, otherwise the forked benchmark vm does not exit
+        Hystrix.reset();
+    }
+
+    @Benchmark
+    public DeserializationBenchmark.Entity[] execute() {
+        return new MicroserviceQueryCommand<DeserializationBenchmark.Entity[]>("benchmarkCommand", url, DeserializationBenchmark.Entity[].class, false).execute();
+    }
+}
@@ -0,0 +1,64 @@
+package microservicecommons.interservicecommunication.json;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * compares the per call deserialization cost of a freshly created ObjectMapper (the way UrlJsonQueryCommand used to
+ * do it) with the shared reader of the ObjectMapperRegistry
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObjectMapperRegistryBenchmark {
+
+    public static class Entity {
+        public long id;
+        public String name;
+        public double lat;
+        public double lon;
+        public List<String> tags;
+    }
+
+    private byte[] payload;
+
+    private ObjectMapperRegistry registry;
+
+    @Setup
+    public void setUp() {
+        payload = "{\"id\":4711,\"name\":\"some entity\",\"lat\":47.98321,\"lon\":11.1824846,\"tags\":[\"a\",\"b\",\"c\"],\"unknown\":true}"
+                .getBytes(StandardCharsets.UTF_8);
+        registry = new ObjectMapperRegistry();
+    }
+
+    @Benchmark
+    public Entity newObjectMapperPerCall() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        return mapper.readValue(new ByteArrayInputStream(payload), Entity.class);
+    }
+
+    @Benchmark
+    public Entity sharedObjectReader() throws IOException {
+        return registry.getReader(Entity.class).readValue(new ByteArrayInputStream(payload));
+    }
+}
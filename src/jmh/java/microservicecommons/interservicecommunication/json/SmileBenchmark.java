@@ -0,0 +1,68 @@
+package microservicecommons.interservicecommunication.json;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * decode throughput of Smile compared to json for the same entities. The Smile payloads are about a third smaller:
+ * 76 instead of 88 bytes for 1 entity, 5664 instead of 8881 for 100 and 594768 instead of 927781 for 10000.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SmileBenchmark {
+
+    @Param({"1", "100", "10000"})
+    public int entities;
+
+    private byte[] json;
+
+    private byte[] smile;
+
+    private ObjectReader jsonReader;
+
+    private ObjectReader smileReader;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapperRegistry registry = new ObjectMapperRegistry();
+        JavaType type = registry.getObjectMapper().getTypeFactory().constructType(new TypeReference<List<DeserializationBenchmark.Entity>>() {});
+        json = DeserializationBenchmark.jsonArray(entities).getBytes(StandardCharsets.UTF_8);
+        smile = new ObjectMapper(new SmileFactory()).writeValueAsBytes(registry.getReader(type).readValue(json));
+        jsonReader = registry.getReader(type);
+        smileReader = registry.getReader(type).with(new SmileFactory());
+    }
+
+    @Benchmark
+    public List<DeserializationBenchmark.Entity> decodeJson() throws IOException {
+        return jsonReader.readValue(new ByteArrayInputStream(json));
+    }
+
+    @Benchmark
+    public List<DeserializationBenchmark.Entity> decodeSmile() throws IOException {
+        return smileReader.readValue(new ByteArrayInputStream(smile));
+    }
+}
@@ -0,0 +1,30 @@
+package microservicecommons.interservicecommunication;
+
+import com.fasterxml.jackson.databind.JavaType;
+import microservicecommons.interservicecommunication.json.ObjectMapperRegistry;
+import microservicecommons.interservicecommunication.model.QueryOptions;
+import microservicecommons.interservicecommunication.model.RetryOptions;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * command of a BatchingCollapser, queries a json array of elements
+ */
+class BatchQueryCommand<T> extends UrlJsonQueryCommand<List<T>> {
+
+    private final JavaType listType;
+
+    BatchQueryCommand(String aCommandName, URL aQueryUrl, Map<String,String> aHeaders, String aMethod, Class<T> aElementClass, String commandGroup, String aPostData, RetryOptions aRetryOptions, Integer aTimeout) {
+        super(aCommandName, aQueryUrl, aHeaders, aMethod, aElementClass, false, commandGroup, aPostData, aRetryOptions, aTimeout, QueryOptions.DEFAULT);
+        listType = ObjectMapperRegistry.getDefault().getObjectMapper().getTypeFactory().constructCollectionType(List.class, aElementClass);
+    }
+
+    @Override
+    protected List<T> readResponse(InputStream body) throws IOException {
+        return ObjectMapperRegistry.getDefault().getReader(listType).readValue(body);
+    }
+}
@@ -0,0 +1,23 @@
+package microservicecommons.interservicecommunication;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Collection;
+
+/**
+ * builds the request of a BatchingCollapser that fetches the elements of several keys at once
+ */
+public interface BatchRequestBuilder<K> {
+
+    /**
+     * @param keys distinct keys of the batch, in the order they were requested
+     */
+    URL buildUrl(Collection<K> keys) throws MalformedURLException;
+
+    /**
+     * @return json body to POST, or null to send a GET request
+     */
+    default String buildPostData(Collection<K> keys) {
+        return null;
+    }
+}
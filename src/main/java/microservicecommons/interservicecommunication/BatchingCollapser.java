@@ -0,0 +1,120 @@
+package microservicecommons.interservicecommunication;
+
+import com.netflix.hystrix.HystrixCollapser;
+import com.netflix.hystrix.HystrixCollapserKey;
+import com.netflix.hystrix.HystrixCollapserProperties;
+import com.netflix.hystrix.HystrixCommand;
+import microservicecommons.interservicecommunication.exception.MicroserviceCommunicationException;
+import microservicecommons.interservicecommunication.model.RetryOptions;
+
+import java.net.MalformedURLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * collapses single keyed lookups, e.g. fetching an entity by id, into batch requests.
+ * Lookups of all threads within the time window (up to maxBatchSize) are sent as one request built by the
+ * BatchRequestBuilder, which has to return a json array. Its elements are handed back to the single lookups by the key
+ * the keyExtractor returns for them; lookups without an element in the response get null.
+ * Usage: <pre>new BatchingCollapser&lt;&gt;("users", userId, User.class, builder, User::getId).execute()</pre>
+ * Hystrix batches by collapserName, so all collapsers with the same name have to be created with the same builder,
+ * keyExtractor and settings.
+ */
+public class BatchingCollapser<K, T> extends HystrixCollapser<List<T>, T, K> {
+
+    private static final String COMMAND_GROUP = "MicroserviceQueryCommand";
+    public static final int DEFAULT_WINDOW_MILLIS = 10;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+    private static final Integer DEFAULT_TIMEOUT = 20000;
+
+    private final String collapserName;
+    private final K key;
+    private final Class<T> elementClass;
+    private final BatchRequestBuilder<K> requestBuilder;
+    private final Function<T, K> keyExtractor;
+    private final RetryOptions retryOptions;
+    private final Integer timeout;
+
+    public BatchingCollapser(String aCollapserName, K aKey, Class<T> aElementClass, BatchRequestBuilder<K> aRequestBuilder, Function<T, K> aKeyExtractor) {
+        this(aCollapserName, aKey, aElementClass, aRequestBuilder, aKeyExtractor, DEFAULT_WINDOW_MILLIS, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * @param aWindowMillis time to collect lookups before a batch is sent
+     * @param aMaxBatchSize maximum amount of lookups in one batch, further lookups go into another batch
+     */
+    public BatchingCollapser(String aCollapserName, K aKey, Class<T> aElementClass, BatchRequestBuilder<K> aRequestBuilder, Function<T, K> aKeyExtractor, int aWindowMillis, int aMaxBatchSize) {
+        this(aCollapserName, aKey, aElementClass, aRequestBuilder, aKeyExtractor, aWindowMillis, aMaxBatchSize,
+                new RetryOptions(0, RetryOptions.RetryFunctionType.LINEAR), DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * @param aRetryOptions retries of each batch request, a retry repeats the lookups of the whole batch
+     * @param aTimeout timeout in ms of each batch request, the collapsing window is not included
+     */
+    public BatchingCollapser(String aCollapserName, K aKey, Class<T> aElementClass, BatchRequestBuilder<K> aRequestBuilder, Function<T, K> aKeyExtractor, int aWindowMillis, int aMaxBatchSize, RetryOptions aRetryOptions, Integer aTimeout) {
+        super(Setter.withCollapserKey(HystrixCollapserKey.Factory.asKey(aCollapserName))
+                .andScope(Scope.GLOBAL)
+                .andCollapserPropertiesDefaults(HystrixCollapserProperties.Setter()
+                        .withTimerDelayInMilliseconds(aWindowMillis)
+                        .withMaxRequestsInBatch(aMaxBatchSize)
+                        .withRequestCacheEnabled(false)));
+        collapserName = aCollapserName;
+        key = aKey;
+        elementClass = aElementClass;
+        requestBuilder = aRequestBuilder;
+        keyExtractor = aKeyExtractor;
+        retryOptions = aRetryOptions;
+        timeout = aTimeout;
+    }
+
+    @Override
+    public K getRequestArgument() {
+        return key;
+    }
+
+    @Override
+    protected HystrixCommand<List<T>> createCommand(Collection<CollapsedRequest<T, K>> collapsedRequests) {
+        // the same key may be requested several times within one window
+        Set<K> keys = new LinkedHashSet<>();
+        for (CollapsedRequest<T, K> collapsedRequest : collapsedRequests) {
+            keys.add(collapsedRequest.getArgument());
+        }
+        String postData = requestBuilder.buildPostData(keys);
+        Map<String,String> headers = new HashMap<>();
+        if (postData != null) {
+            headers.put("Content-Type", "application/json");
+        }
+        try {
+            return new BatchQueryCommand<>(
+                    collapserName,
+                    requestBuilder.buildUrl(keys),
+                    headers,
+                    postData != null ? "POST" : "GET",
+                    elementClass,
+                    COMMAND_GROUP,
+                    postData != null ? postData : "",
+                    retryOptions,
+                    timeout
+            );
+        } catch (MalformedURLException e) {
+            throw new MicroserviceCommunicationException("could not build url for batch of " + collapserName, e);
+        }
+    }
+
+    @Override
+    protected void mapResponseToRequests(List<T> batchResponse, Collection<CollapsedRequest<T, K>> collapsedRequests) {
+        Map<K, T> elementsByKey = new HashMap<>();
+        for (T element : batchResponse) {
+            elementsByKey.put(keyExtractor.apply(element), element);
+        }
+        for (CollapsedRequest<T, K> collapsedRequest : collapsedRequests) {
+            collapsedRequest.setResponse(elementsByKey.get(collapsedRequest.getArgument()));
+        }
+    }
+}
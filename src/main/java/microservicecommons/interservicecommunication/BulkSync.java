@@ -0,0 +1,349 @@
+package microservicecommons.interservicecommunication;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import microservicecommons.interservicecommunication.exception.ApiCommunicationException;
+import microservicecommons.interservicecommunication.exception.MicroserviceCommunicationException;
+import microservicecommons.interservicecommunication.json.ObjectMapperRegistry;
+import microservicecommons.interservicecommunication.model.SyncServiceResponse;
+import microservicecommons.interservicecommunication.transport.RequestBodies;
+import microservicecommons.interservicecommunication.transport.RequestBody;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import rx.Observable;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * sends a large amount of records to a sync endpoint in batches, instead of one huge request.
+ * Each batch is posted as a json array of its records, the endpoint answers with a SyncServiceResponse. A batch ends when
+ * it reaches maxBatchRecords or maxBatchBytes of serialized records. Up to parallelism batches are sent at the same
+ * time, the records are only taken from the source when a batch can be sent, so a slow endpoint slows down reading the
+ * source instead of filling the memory. Failed batches, i.e. failed commands or responses that are no success, are sent
+ * again up to batchRetries times, the other batches are not affected. A batch whose command timed out may still have
+ * been applied by the endpoint and is applied twice by its retry, so the endpoint must be idempotent, e.g. an upsert by
+ * the record's key.
+ * Usage:
+ * <pre>
+ * BulkSync.Result&lt;User&gt; result = BulkSync.&lt;User&gt;of("syncUsers", "http://users:8080/sync").withParallelism(4).execute(users.stream());
+ * </pre>
+ * The batches are sent by hystrix commands of the template's group, so parallelism should not exceed the size of its
+ * thread pool. Immutable, each with-method returns a modified copy.
+ */
+public final class BulkSync<R> {
+
+    private static final Logger LOGGER = LogManager.getLogger(BulkSync.class);
+
+    public static final int DEFAULT_MAX_BATCH_RECORDS = 1000;
+    public static final int DEFAULT_MAX_BATCH_BYTES = 1024 * 1024;
+    public static final int DEFAULT_PARALLELISM = 4;
+    public static final int DEFAULT_BATCH_RETRIES = 2;
+    public static final long DEFAULT_RETRY_DELAY_MILLIS = 1000;
+
+    private final CommandTemplate<SyncServiceResponse> template;
+    private final int maxBatchRecords;
+    private final int maxBatchBytes;
+    private final int parallelism;
+    private final int batchRetries;
+    private final long retryDelayMillis;
+
+    private BulkSync(CommandTemplate<SyncServiceResponse> template, int maxBatchRecords, int maxBatchBytes, int parallelism, int batchRetries, long retryDelayMillis) {
+        this.template = template;
+        this.maxBatchRecords = maxBatchRecords;
+        this.maxBatchBytes = maxBatchBytes;
+        this.parallelism = parallelism;
+        this.batchRetries = batchRetries;
+        this.retryDelayMillis = retryDelayMillis;
+    }
+
+    /**
+     * @param aTemplate creates the command for each batch, it must not have placeholders
+     */
+    public static <R> BulkSync<R> to(CommandTemplate<SyncServiceResponse> aTemplate) {
+        if (!aTemplate.getPlaceholders().isEmpty()) {
+            throw new IllegalArgumentException("the url template of a bulk sync can not have placeholders: " + aTemplate.getUrlTemplate());
+        }
+        return new BulkSync<>(aTemplate, DEFAULT_MAX_BATCH_RECORDS, DEFAULT_MAX_BATCH_BYTES, DEFAULT_PARALLELISM, DEFAULT_BATCH_RETRIES, DEFAULT_RETRY_DELAY_MILLIS);
+    }
+
+    /**
+     * POSTs the batches to the url, with the default settings of CommandTemplate
+     */
+    public static <R> BulkSync<R> of(String aCommandName, String aUrl) {
+        return to(CommandTemplate.of(aCommandName, aUrl, SyncServiceResponse.class).withMethod("POST"));
+    }
+
+    /**
+     * @param aMaxBatchRecords maximum amount of records in one batch
+     * @param aMaxBatchBytes maximum size of the serialized records of one batch, a larger record is sent as batch on its own
+     */
+    public BulkSync<R> withBatchSize(int aMaxBatchRecords, int aMaxBatchBytes) {
+        return new BulkSync<>(template, aMaxBatchRecords, aMaxBatchBytes, parallelism, batchRetries, retryDelayMillis);
+    }
+
+    /**
+     * @param aParallelism maximum amount of batches sent at the same time
+     */
+    public BulkSync<R> withParallelism(int aParallelism) {
+        return new BulkSync<>(template, maxBatchRecords, maxBatchBytes, aParallelism, batchRetries, retryDelayMillis);
+    }
+
+    /**
+     * @param aBatchRetries how often a failed batch is sent again, in addition to the retries of the command itself
+     * @param aRetryDelayMillis delay before the first retry of a batch, multiplied with the number of the retry
+     */
+    public BulkSync<R> withBatchRetries(int aBatchRetries, long aRetryDelayMillis) {
+        return new BulkSync<>(template, maxBatchRecords, maxBatchBytes, parallelism, aBatchRetries, aRetryDelayMillis);
+    }
+
+    public Result<R> execute(Stream<? extends R> records) throws InterruptedException {
+        return execute(records.iterator());
+    }
+
+    /**
+     * sends all records and waits until every batch succeeded or ran out of retries
+     * @throws InterruptedException if the calling thread was interrupted, batches already sent are not cancelled
+     * @throws RuntimeException if reading or serializing a record failed, after the batches already sent finished
+     */
+    public Result<R> execute(Iterator<? extends R> records) throws InterruptedException {
+        Progress<R> progress = new Progress<>();
+        // a permit per batch in flight, including its retries
+        Semaphore inFlight = new Semaphore(parallelism);
+        List<R> batchRecords = new ArrayList<>();
+        ByteArrayOutputStream batchBytes = new ByteArrayOutputStream();
+        int batchIndex = 0;
+        try {
+            while (records.hasNext()) {
+                R record = records.next();
+                byte[] json = serialize(record);
+                // the brackets and commas of the array count as well
+                if (!batchRecords.isEmpty() && (batchRecords.size() >= maxBatchRecords || batchBytes.size() + json.length + 2 > maxBatchBytes)) {
+                    inFlight.acquire();
+                    send(new Batch<>(batchIndex++, batchRecords, toArray(batchBytes)), 0, progress, inFlight);
+                    batchRecords = new ArrayList<>();
+                    batchBytes.reset();
+                }
+                batchBytes.write(batchRecords.isEmpty() ? '[' : ',');
+                batchBytes.write(json, 0, json.length);
+                batchRecords.add(record);
+            }
+            if (!batchRecords.isEmpty()) {
+                inFlight.acquire();
+                send(new Batch<>(batchIndex++, batchRecords, toArray(batchBytes)), 0, progress, inFlight);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("reading the records failed after " + batchIndex + " batches, waiting for the batches in flight: " + e.getMessage());
+            // no batch may still be running when the caller handles the failure
+            try {
+                inFlight.acquire(parallelism);
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            throw e;
+        }
+        // all permits are back once the last batch finished
+        inFlight.acquire(parallelism);
+        Result<R> result = progress.toResult(batchIndex);
+        LOGGER.info("synced " + result.getAffectedAmount() + " affected in " + batchIndex + " batches, " + result.getFailedBatches().size() + " failed");
+        return result;
+    }
+
+    private static byte[] serialize(Object record) {
+        try {
+            return ObjectMapperRegistry.getDefault().getObjectMapper().writeValueAsBytes(record);
+        } catch (JsonProcessingException e) {
+            throw new MicroserviceCommunicationException("could not serialize record " + record, e);
+        }
+    }
+
+    private static byte[] toArray(ByteArrayOutputStream batchBytes) {
+        batchBytes.write(']');
+        return batchBytes.toByteArray();
+    }
+
+    /**
+     * sends the batch without blocking, the permit is released when it succeeded or ran out of retries
+     */
+    private void send(Batch<R> batch, int retry, Progress<R> progress, Semaphore inFlight) {
+        Observable<SyncServiceResponse> command;
+        try {
+            command = template.createWithBody(batch.body).toObservable();
+        } catch (RuntimeException e) {
+            failed(batch, retry, e.getMessage(), ScatterGather.toApiCommunicationException(e), progress, inFlight);
+            return;
+        }
+        command.subscribe(
+                response -> {
+                    if (response != null && response.isSuccess()) {
+                        progress.succeeded(response);
+                        inFlight.release();
+                    } else {
+                        failed(batch, retry, response != null ? response.getMessage() : "no response", null, progress, inFlight);
+                    }
+                },
+                e -> {
+                    ApiCommunicationException failure = ScatterGather.toApiCommunicationException(e);
+                    failed(batch, retry, failure.getMessage(), failure, progress, inFlight);
+                }
+        );
+    }
+
+    private void failed(Batch<R> batch, int retry, String message, ApiCommunicationException failure, Progress<R> progress, Semaphore inFlight) {
+        if (retry >= batchRetries) {
+            LOGGER.warn("batch " + batch.index + " with " + batch.records.size() + " records failed after " + (retry + 1) + " tries: " + message);
+            progress.failed(new FailedBatch<>(batch.index, batch.records, message, failure));
+            inFlight.release();
+            return;
+        }
+        LOGGER.debug("batch " + batch.index + " failed: " + message + ". Sending it again soon...");
+        progress.retried();
+        Observable.timer(retryDelayMillis * (retry + 1), TimeUnit.MILLISECONDS)
+                .subscribe(tick -> send(batch, retry + 1, progress, inFlight));
+    }
+
+    private static class Batch<R> {
+
+        private final int index;
+        private final List<R> records;
+        private final RequestBody body;
+
+        private Batch(int index, List<R> records, byte[] json) {
+            this.index = index;
+            this.records = records;
+            this.body = RequestBodies.ofBytes(json, "application/json");
+        }
+    }
+
+    /**
+     * state of one execution, updated from the threads of the commands
+     */
+    private static class Progress<R> {
+
+        private final AtomicLong affectedAmount = new AtomicLong();
+        private final AtomicInteger succeededBatches = new AtomicInteger();
+        private final AtomicInteger retries = new AtomicInteger();
+        private final List<FailedBatch<R>> failedBatches = Collections.synchronizedList(new ArrayList<>());
+
+        private void succeeded(SyncServiceResponse response) {
+            if (response.getAffectedAmount() != null) {
+                affectedAmount.addAndGet(response.getAffectedAmount());
+            }
+            succeededBatches.incrementAndGet();
+        }
+
+        private void retried() {
+            retries.incrementAndGet();
+        }
+
+        private void failed(FailedBatch<R> failedBatch) {
+            failedBatches.add(failedBatch);
+        }
+
+        private Result<R> toResult(int batches) {
+            List<FailedBatch<R>> failed;
+            synchronized (failedBatches) {
+                failed = new ArrayList<>(failedBatches);
+            }
+            failed.sort((a, b) -> Integer.compare(a.getIndex(), b.getIndex()));
+            return new Result<>(affectedAmount.get(), batches, succeededBatches.get(), retries.get(), failed);
+        }
+    }
+
+    /**
+     * a batch that did not succeed with all its retries, with its records, e.g. to send them again later
+     */
+    public static final class FailedBatch<R> {
+
+        private final int index;
+        private final List<R> records;
+        private final String message;
+        private final ApiCommunicationException failure;
+
+        private FailedBatch(int index, List<R> records, String message, ApiCommunicationException failure) {
+            this.index = index;
+            this.records = Collections.unmodifiableList(records);
+            this.message = message;
+            this.failure = failure;
+        }
+
+        /**
+         * @return position of the batch among all batches, starting with 0
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public List<R> getRecords() {
+            return records;
+        }
+
+        /**
+         * @return message of the last try, from the SyncServiceResponse or the exception
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * @return exception of the last try, with its ProblemReason, null if the endpoint answered without success
+         */
+        public ApiCommunicationException getFailure() {
+            return failure;
+        }
+    }
+
+    public static final class Result<R> {
+
+        private final long affectedAmount;
+        private final int batches;
+        private final int succeededBatches;
+        private final int retries;
+        private final List<FailedBatch<R>> failedBatches;
+
+        private Result(long affectedAmount, int batches, int succeededBatches, int retries, List<FailedBatch<R>> failedBatches) {
+            this.affectedAmount = affectedAmount;
+            this.batches = batches;
+            this.succeededBatches = succeededBatches;
+            this.retries = retries;
+            this.failedBatches = Collections.unmodifiableList(failedBatches);
+        }
+
+        /**
+         * @return sum of the affectedAmount of all successful batches
+         */
+        public long getAffectedAmount() {
+            return affectedAmount;
+        }
+
+        public int getBatches() {
+            return batches;
+        }
+
+        public int getSucceededBatches() {
+            return succeededBatches;
+        }
+
+        /**
+         * @return amount of times a failed batch was sent again
+         */
+        public int getRetries() {
+            return retries;
+        }
+
+        public List<FailedBatch<R>> getFailedBatches() {
+            return failedBatches;
+        }
+
+        public boolean isSuccess() {
+            return failedBatches.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package microservicecommons.interservicecommunication;
+
+import com.netflix.hystrix.HystrixCommand;
+import microservicecommons.interservicecommunication.exception.MicroserviceCommunicationException;
+import microservicecommons.interservicecommunication.json.ObjectMapperRegistry;
+import microservicecommons.interservicecommunication.model.QueryOptions;
+import microservicecommons.interservicecommunication.model.RetryOptions;
+import microservicecommons.interservicecommunication.transport.RequestBody;
+
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * creates MicroserviceQueryCommands that differ only in some parts of their url, with everything else resolved once:
+ * the hystrix settings, the headers, the retry and query options, and the parsed url template.
+ * Usage:
+ * <pre>
+ * private static final CommandTemplate&lt;User&gt; GET_USER = CommandTemplate.of("getUser", "http://users:8080/users/{id}?fields={fields}", User.class);
+ * User user = GET_USER.create(userId, "name,email").execute();
+ * </pre>
+ * Placeholders are only allowed in the path and the query, their values are url encoded. Immutable and thread-safe,
+ * each with-method returns a modified copy.
+ */
+public final class CommandTemplate<T> {
+
+    private static final Integer DEFAULT_TIMEOUT = 20000;
+    private static final RetryOptions DEFAULT_RETRY_OPTIONS = new RetryOptions(0, RetryOptions.RetryFunctionType.LINEAR);
+
+    private final String commandName;
+    private final String urlTemplate;
+    private final Class<T> jsonMappingClass;
+    private final String method;
+    private final Map<String,String> headers;
+    private final boolean cachingEnabled;
+    private final RetryOptions retryOptions;
+    private final Integer timeout;
+    private final QueryOptions queryOptions;
+
+    private final HystrixCommand.Setter setter;
+    private final String protocol;
+    private final String host;
+    private final int port;
+    /** the parts of the path and query between the placeholders, one more than there are placeholders */
+    private final String[] literals;
+    private final String[] placeholders;
+    /** whether the placeholder is in the query, which is encoded slightly different than the path */
+    private final boolean[] inQuery;
+    private final int literalsLength;
+
+    private CommandTemplate(String aCommandName, String aUrlTemplate, Class<T> aJsonMappingClass, String aMethod, Map<String,String> aHeaders,
+                            boolean aCachingEnabled, RetryOptions aRetryOptions, Integer aTimeout, QueryOptions aQueryOptions) {
+        commandName = aCommandName;
+        urlTemplate = aUrlTemplate;
+        jsonMappingClass = aJsonMappingClass;
+        method = aMethod;
+        headers = Collections.unmodifiableMap(new HashMap<>(aHeaders));
+        cachingEnabled = aCachingEnabled;
+        retryOptions = aRetryOptions;
+        timeout = aTimeout;
+        queryOptions = aQueryOptions;
+        setter = MicroserviceQueryCommand.setter(aTimeout);
+
+        int authorityStart = aUrlTemplate.indexOf("://");
+        if (authorityStart < 0) {
+            throw new IllegalArgumentException("url template " + aUrlTemplate + " has no protocol");
+        }
+        int fileStart = authorityStart + 3;
+        while (fileStart < aUrlTemplate.length() && aUrlTemplate.charAt(fileStart) != '/' && aUrlTemplate.charAt(fileStart) != '?') {
+            fileStart++;
+        }
+        URL base;
+        try {
+            base = new URL(aUrlTemplate.substring(0, fileStart));
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException("invalid url template " + aUrlTemplate, e);
+        }
+        protocol = base.getProtocol();
+        host = base.getHost();
+        port = base.getPort();
+
+        List<String> literalList = new ArrayList<>();
+        List<String> placeholderList = new ArrayList<>();
+        List<Boolean> inQueryList = new ArrayList<>();
+        int literalStart = fileStart;
+        int queryStart = aUrlTemplate.indexOf('?', fileStart);
+        for (int open = aUrlTemplate.indexOf('{', fileStart); open >= 0; open = aUrlTemplate.indexOf('{', literalStart)) {
+            int close = aUrlTemplate.indexOf('}', open);
+            if (close < 0) {
+                throw new IllegalArgumentException("unclosed placeholder in url template " + aUrlTemplate);
+            }
+            literalList.add(aUrlTemplate.substring(literalStart, open));
+            placeholderList.add(aUrlTemplate.substring(open + 1, close));
+            inQueryList.add(queryStart >= 0 && open > queryStart);
+            literalStart = close + 1;
+        }
+        literalList.add(aUrlTemplate.substring(literalStart));
+        literals = literalList.toArray(new String[literalList.size()]);
+        placeholders = placeholderList.toArray(new String[placeholderList.size()]);
+        inQuery = new boolean[placeholders.length];
+        for (int i = 0; i < inQuery.length; i++) {
+            inQuery[i] = inQueryList.get(i);
+        }
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        literalsLength = length;
+
+        // so the first command does not have to introspect jsonMappingClass
+        ObjectMapperRegistry.getDefault().getReader(aJsonMappingClass);
+    }
+
+    /**
+     * GET without headers, retries and further options, with the default timeout
+     * @param aUrlTemplate url with {name} placeholders in the path and query
+     */
+    public static <T> CommandTemplate<T> of(String aCommandName, String aUrlTemplate, Class<T> aJsonMappingClass) {
+        return new CommandTemplate<>(aCommandName, aUrlTemplate, aJsonMappingClass, "GET", Collections.emptyMap(), false,
+                DEFAULT_RETRY_OPTIONS, DEFAULT_TIMEOUT, QueryOptions.DEFAULT);
+    }
+
+    public CommandTemplate<T> withMethod(String aMethod) {
+        return new CommandTemplate<>(commandName, urlTemplate, jsonMappingClass, aMethod, headers, cachingEnabled, retryOptions, timeout, queryOptions);
+    }
+
+    public CommandTemplate<T> withHeader(String name, String value) {
+        Map<String,String> newHeaders = new HashMap<>(headers);
+        newHeaders.put(name, value);
+        return new CommandTemplate<>(commandName, urlTemplate, jsonMappingClass, method, newHeaders, cachingEnabled, retryOptions, timeout, queryOptions);
+    }
+
+    public CommandTemplate<T> withCaching(boolean aCachingEnabled) {
+        return new CommandTemplate<>(commandName, urlTemplate, jsonMappingClass, method, headers, aCachingEnabled, retryOptions, timeout, queryOptions);
+    }
+
+    public CommandTemplate<T> withRetryOptions(RetryOptions aRetryOptions) {
+        return new CommandTemplate<>(commandName, urlTemplate, jsonMappingClass, method, headers, cachingEnabled, aRetryOptions, timeout, queryOptions);
+    }
+
+    /**
+     * @param aTimeout hystrix timeout in ms for all tries together
+     */
+    public CommandTemplate<T> withTimeout(Integer aTimeout) {
+        return new CommandTemplate<>(commandName, urlTemplate, jsonMappingClass, method, headers, cachingEnabled, retryOptions, aTimeout, queryOptions);
+    }
+
+    public CommandTemplate<T> withQueryOptions(QueryOptions aQueryOptions) {
+        return new CommandTemplate<>(commandName, urlTemplate, jsonMappingClass, method, headers, cachingEnabled, retryOptions, timeout, aQueryOptions);
+    }
+
+    /**
+     * @param values values of the placeholders, in the order they appear in the url template
+     * @return a new command, which can be executed once
+     */
+    public MicroserviceQueryCommand<T> create(Object... values) {
+        return createWithBody(null, values);
+    }
+
+    /**
+     * @param requestBody body sent with the request, e.g. RequestBodies.ofJson(object), null for none
+     */
+    public MicroserviceQueryCommand<T> createWithBody(RequestBody requestBody, Object... values) {
+        return new MicroserviceQueryCommand<>(setter, commandName, expand(values), method, headers, jsonMappingClass, cachingEnabled,
+                requestBody, retryOptions, queryOptions);
+    }
+
+    private URL expand(Object[] values) {
+        if (values.length != placeholders.length) {
+            throw new IllegalArgumentException(placeholders.length + " values expected for " + urlTemplate + ", got " + values.length);
+        }
+        String file;
+        if (placeholders.length == 0) {
+            file = literals[0];
+        } else {
+            StringBuilder builder = new StringBuilder(literalsLength + 16 * placeholders.length);
+            for (int i = 0; i < placeholders.length; i++) {
+                builder.append(literals[i]);
+                appendEncoded(builder, String.valueOf(values[i]), inQuery[i]);
+            }
+            builder.append(literals[placeholders.length]);
+            file = builder.toString();
+        }
+        try {
+            // unlike new URL(String), this does not parse the whole url again
+            return new URL(protocol, host, port, file);
+        } catch (MalformedURLException e) {
+            throw new MicroserviceCommunicationException("invalid url " + file + " for template " + urlTemplate, e);
+        }
+    }
+
+    private static void appendEncoded(StringBuilder builder, String value, boolean query) {
+        for (int i = 0; i < value.length(); i++) {
+            if (!isUnreserved(value.charAt(i))) {
+                try {
+                    String encoded = URLEncoder.encode(value, "UTF-8");
+                    // URLEncoder encodes form data, where spaces are a +, which is a literal + in a path
+                    builder.append(query ? encoded : encoded.replace("+", "%20"));
+                } catch (UnsupportedEncodingException e) {
+                    throw new IllegalStateException(e);
+                }
+                return;
+            }
+        }
+        // the common case of ids and simple words, which need no encoding
+        builder.append(value);
+    }
+
+    private static boolean isUnreserved(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '-' || c == '.' || c == '_' || c == '~';
+    }
+
+    /**
+     * @return names of the placeholders, in the order their values are expected
+     */
+    public List<String> getPlaceholders() {
+        return Collections.unmodifiableList(Arrays.asList(placeholders));
+    }
+
+    public String getUrlTemplate() {
+        return urlTemplate;
+    }
+}
@@ -1,7 +1,16 @@
 package microservicecommons.interservicecommunication;
 
+import microservicecommons.interservicecommunication.exception.MicroserviceCommunicationException;
+import microservicecommons.interservicecommunication.json.ObjectMapperRegistry;
+import microservicecommons.interservicecommunication.loadbalancing.LoadBalancer;
+import microservicecommons.interservicecommunication.model.QueryOptions;
 import microservicecommons.interservicecommunication.model.RetryOptions;
+import microservicecommons.interservicecommunication.smile.SmileMediaType;
+import microservicecommons.interservicecommunication.transport.RequestBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Map;
 
@@ -23,4 +32,55 @@ public class MicroserviceQueryCommand<T> extends UrlJsonQueryCommand<T> {
     public MicroserviceQueryCommand(String aCommandName, URL aQueryUrl, String method, Map<String,String> headers, Class aJsonMappingClass, boolean aCachingEnabled, String postData) {
         super(aCommandName, aQueryUrl, headers, method, aJsonMappingClass, aCachingEnabled, COMMAND_GROUP, postData);
     }
+
+    public MicroserviceQueryCommand(String aCommandName, URL aQueryUrl, String method, Map<String,String> headers, Class aJsonMappingClass, boolean aCachingEnabled, String postData, RetryOptions retryOptions, Integer aTimeout, QueryOptions queryOptions) {
+        super(aCommandName, aQueryUrl, headers, method, aJsonMappingClass, aCachingEnabled, COMMAND_GROUP, postData, retryOptions, aTimeout, queryOptions);
+    }
+
+    /**
+     * @param requestBody body sent with any method, e.g. RequestBodies.ofJson(object), null for none
+     */
+    public MicroserviceQueryCommand(String aCommandName, URL aQueryUrl, String method, Map<String,String> headers, Class aJsonMappingClass, boolean aCachingEnabled, RequestBody requestBody, RetryOptions retryOptions, Integer aTimeout, QueryOptions queryOptions) {
+        super(aCommandName, aQueryUrl, headers, method, aJsonMappingClass, aCachingEnabled, COMMAND_GROUP, requestBody, retryOptions, aTimeout, queryOptions);
+    }
+
+    /**
+     * query to one of the instances of a replicated service, chosen by the load balancer for every try
+     * @param aPathAndQuery path and query of the url, e.g. /users?id=5
+     */
+    public MicroserviceQueryCommand(String aCommandName, LoadBalancer aService, String aPathAndQuery, String method, Map<String,String> headers, Class aJsonMappingClass, boolean aCachingEnabled, String postData, RetryOptions retryOptions, Integer aTimeout, QueryOptions queryOptions) {
+        super(aCommandName, logicalUrl(aService, aPathAndQuery), headers, method, aJsonMappingClass, aCachingEnabled, COMMAND_GROUP, postData, retryOptions, aTimeout, queryOptions.withLoadBalancer(aService));
+    }
+
+    /**
+     * used by CommandTemplate, with settings built once for all its commands
+     */
+    protected MicroserviceQueryCommand(Setter aSetter, String aCommandName, URL aQueryUrl, String method, Map<String,String> headers, Class aJsonMappingClass, boolean aCachingEnabled, RequestBody requestBody, RetryOptions retryOptions, QueryOptions queryOptions) {
+        super(aSetter, aCommandName, aQueryUrl, headers, method, aJsonMappingClass, aCachingEnabled, requestBody, retryOptions, queryOptions);
+    }
+
+    static Setter setter(Integer aTimeout) {
+        return setter(COMMAND_GROUP, aTimeout);
+    }
+
+    private static URL logicalUrl(LoadBalancer service, String pathAndQuery) {
+        try {
+            return new URL("http", service.getServiceName(), pathAndQuery);
+        } catch (MalformedURLException e) {
+            throw new MicroserviceCommunicationException("invalid path " + pathAndQuery + " for service " + service.getServiceName(), e);
+        }
+    }
+
+    @Override
+    protected String getAcceptHeader() {
+        return getQueryOptions().isSmileEnabled() ? SmileMediaType.ACCEPT_SMILE_OR_JSON : null;
+    }
+
+    @Override
+    protected T readResponse(InputStream body, String contentType) throws IOException {
+        if (SmileMediaType.isSmile(contentType)) {
+            return ObjectMapperRegistry.getDefault().getSmileReader(getJsonMappingClass()).readValue(body);
+        }
+        return super.readResponse(body, contentType);
+    }
 }
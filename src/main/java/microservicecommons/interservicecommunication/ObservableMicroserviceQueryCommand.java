@@ -0,0 +1,22 @@
+package microservicecommons.interservicecommunication;
+
+import microservicecommons.interservicecommunication.model.RetryOptions;
+
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * non-blocking variant of MicroserviceQueryCommand
+ */
+public class ObservableMicroserviceQueryCommand<T> extends ObservableUrlJsonQueryCommand<T> {
+
+    private static final String COMMAND_GROUP = "MicroserviceQueryCommand";
+
+    public ObservableMicroserviceQueryCommand(String aCommandName, URL aQueryUrl, Class aJsonMappingClass) {
+        super(aCommandName, aQueryUrl, aJsonMappingClass, COMMAND_GROUP);
+    }
+
+    public ObservableMicroserviceQueryCommand(String aCommandName, URL aQueryUrl, String method, Map<String,String> headers, Class aJsonMappingClass, String postData, RetryOptions retryOptions, Integer aTimeout) {
+        super(aCommandName, aQueryUrl, headers, method, aJsonMappingClass, COMMAND_GROUP, postData, retryOptions, aTimeout);
+    }
+}
@@ -0,0 +1,176 @@
+package microservicecommons.interservicecommunication;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.netflix.hystrix.HystrixCommandGroupKey;
+import com.netflix.hystrix.HystrixCommandProperties;
+import com.netflix.hystrix.HystrixObservableCommand;
+import microservicecommons.interservicecommunication.exception.ApiCommunicationException;
+import microservicecommons.interservicecommunication.json.ObjectMapperRegistry;
+import microservicecommons.interservicecommunication.metrics.CommandMetrics;
+import microservicecommons.interservicecommunication.metrics.CommandMetricsHolder;
+import microservicecommons.interservicecommunication.model.RetryOptions;
+import microservicecommons.interservicecommunication.transport.AsyncHttpTransport;
+import microservicecommons.interservicecommunication.transport.BufferedHttpResponse;
+import microservicecommons.interservicecommunication.transport.HttpRequest;
+import microservicecommons.interservicecommunication.transport.HttpTransports;
+import microservicecommons.interservicecommunication.transport.RequestBodies;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import rx.Observable;
+import rx.subscriptions.Subscriptions;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * non-blocking sibling of UrlJsonQueryCommand, for queries that are an url that returns some json.
+ * The request is executed by an AsyncHttpTransport and retries are scheduled on a timer, so no thread is blocked
+ * while waiting for the response or the next try. Failures are mapped to the same ApiCommunicationException.ProblemReason
+ * as in UrlJsonQueryCommand.
+ * Uses semaphore isolation, as there is no blocking work that would need a thread pool.
+ */
+public abstract class ObservableUrlJsonQueryCommand<T> extends HystrixObservableCommand<T> {
+
+    private static final Logger LOGGER = LogManager.getLogger(ObservableUrlJsonQueryCommand.class);
+
+    private static final Integer DEFAULT_TIMEOUT = 20000;
+    private static final Integer DEFAULT_MAX_CONCURRENT_REQUESTS = 500;
+    private final String commandName;
+    private final URL queryUrl;
+    private final Class jsonMappingClass;
+    private final Map<String,String> headers;
+    private final String method;
+    private final String postData;
+    private final RetryOptions retryOptions;
+
+    public ObservableUrlJsonQueryCommand(String aCommandName, URL aQueryUrl, Class aJsonMappingClass, String commandGroup){
+        this(aCommandName,aQueryUrl,new HashMap<>(),"GET",aJsonMappingClass,commandGroup,"",new RetryOptions(0, RetryOptions.RetryFunctionType.LINEAR),DEFAULT_TIMEOUT);
+    }
+
+    public ObservableUrlJsonQueryCommand(String aCommandName, URL aQueryUrl, Map<String,String> aHeaders, String aMethod, Class aJsonMappingClass, String commandGroup, String aPostData, RetryOptions aRetryOptions, Integer aTimeout){
+        super(Setter.withGroupKey(HystrixCommandGroupKey.Factory.asKey(commandGroup))
+                .andCommandPropertiesDefaults(HystrixCommandProperties.Setter()
+                        .withRequestLogEnabled(false)
+                        .withExecutionTimeoutInMilliseconds(aTimeout)
+                        .withExecutionIsolationSemaphoreMaxConcurrentRequests(DEFAULT_MAX_CONCURRENT_REQUESTS)));
+        commandName = aCommandName;
+        queryUrl = aQueryUrl;
+        jsonMappingClass = aJsonMappingClass;
+        headers = aHeaders;
+        method = aMethod;
+        postData = aPostData;
+        retryOptions = aRetryOptions;
+    }
+
+    @Override
+    protected Observable<T> construct() {
+        HttpRequest request = new HttpRequest(
+                queryUrl,
+                method,
+                headers,
+                method.equals("POST") ? RequestBodies.ofString(postData, null) : null,
+                retryOptions.getConnectTimeout(),
+                retryOptions.getReadTimeout()
+        );
+        // shared reader, so Jackson does not have to introspect jsonMappingClass again for every call
+        ObjectReader reader = ObjectMapperRegistry.getDefault().getReader(jsonMappingClass);
+        if (retryOptions.getRetryBudget() != null) {
+            retryOptions.getRetryBudget().recordRequest();
+        }
+        return executeWithRetries(getAsyncTransport(), request, 0, retryOptions.getBaseDelayMillis())
+                .map(response -> {
+                    try {
+                        CommandMetrics metrics = getCommandMetrics();
+                        if (metrics.isEnabled()) {
+                            metrics.recordResponseSize(commandName, response.getBodyBytes().length);
+                        }
+                        return reader.<T>readValue(response.getBodyBytes());
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                })
+                .onErrorResumeNext(e -> Observable.error(e instanceof CompletionException ? e.getCause() : e));
+    }
+
+    /**
+     * the transport all requests of this command are executed with. Override to use another one than the process-wide
+     * default of HttpTransports.
+     */
+    protected AsyncHttpTransport getAsyncTransport() {
+        return HttpTransports.getDefaultAsync();
+    }
+
+    /**
+     * the metrics all executions of this command are recorded to. Override to use another one than the process-wide
+     * default of CommandMetricsHolder.
+     */
+    protected CommandMetrics getCommandMetrics() {
+        return CommandMetricsHolder.getDefault();
+    }
+
+    /**
+     * executes the request, and schedules a retry on a timer if it fails and there are retries left
+     * @return emits the successful response, or fails with an ApiCommunicationException
+     */
+    private Observable<BufferedHttpResponse> executeWithRetries(AsyncHttpTransport transport, HttpRequest request, int i, long previousDelay) {
+        return fromFuture(transport.executeAsync(request))
+                .flatMap(response -> response.isSuccessful()
+                        ? Observable.just(response)
+                        : Observable.<BufferedHttpResponse>error(ApiCommunicationException.forErrorResponse(queryUrl, response.getStatusCode(), response.readBodyAsString())))
+                .onErrorResumeNext(e -> {
+                    ApiCommunicationException failure = ApiCommunicationException.forConnectionProblem(e instanceof Exception ? (Exception) e : new IOException(e));
+                    if(i>=retryOptions.getMaxAmountRetries()) {
+                        LOGGER.warn("retry exhausted after "+(i+1)+" tries.");
+                        return Observable.error(failure);
+                    } else if(!retryOptions.isRetryable(failure)) {
+                        LOGGER.debug("command "+commandName+" failed with "+failure.getProblemReason()+", which is not retried.");
+                        return Observable.error(failure);
+                    } else if(retryOptions.getRetryBudget() != null && !retryOptions.getRetryBudget().tryAcquireRetry()) {
+                        LOGGER.warn("retry budget exhausted, command "+commandName+" is not retried.");
+                        return Observable.error(failure);
+                    }
+                    //make another try
+                    LOGGER.debug("command "+commandName+" failed due to exception: "+failure.getMessage()+". Starting retry soon...");
+                    LOGGER.debug(failure);
+                    retryOptions.getOnEachRetry().apply(i+1);
+                    long delay = retryOptions.getDelayMillis(i+1, previousDelay);
+                    CommandMetrics metrics = getCommandMetrics();
+                    if (metrics.isEnabled()) {
+                        metrics.recordRetry(commandName, failure.getProblemReason(), delay);
+                    }
+                    return Observable.timer(delay, TimeUnit.MILLISECONDS)
+                            .flatMap(tick -> executeWithRetries(transport, request, i+1, delay));
+                });
+    }
+
+    /**
+     * unsubscribing, e.g. on a hystrix timeout, cancels the future and so aborts the request
+     */
+    private static <R> Observable<R> fromFuture(CompletableFuture<R> future) {
+        return Observable.create(subscriber -> {
+            subscriber.add(Subscriptions.create(() -> future.cancel(true)));
+            future.whenComplete((result, failure) -> {
+                if (failure != null) {
+                    subscriber.onError(failure instanceof CompletionException ? failure.getCause() : failure);
+                } else {
+                    subscriber.onNext(result);
+                    subscriber.onCompleted();
+                }
+            });
+        });
+    }
+
+    /**
+     * executes the command, with the result as CompletableFuture instead of an Observable
+     */
+    public CompletableFuture<T> toCompletableFuture() {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        toObservable().single().subscribe(future::complete, future::completeExceptionally);
+        return future;
+    }
+}
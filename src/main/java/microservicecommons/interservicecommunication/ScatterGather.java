@@ -0,0 +1,266 @@
+package microservicecommons.interservicecommunication;
+
+import com.netflix.hystrix.exception.HystrixRuntimeException;
+import microservicecommons.interservicecommunication.exception.ApiCommunicationException;
+import microservicecommons.interservicecommunication.exception.ApiCommunicationException.ProblemReason;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import rx.Subscription;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * executes several, possibly different, commands concurrently and gathers their results within an overall deadline,
+ * so the latency is that of the slowest command instead of the sum of all.
+ * Usage:
+ * <pre>
+ * ScatterGather.Result&lt;String&gt; result = ScatterGather.all(500).execute(commands);
+ * User user = result.get("user");
+ * </pre>
+ * The commands are keyed by anything the caller wants to look the results up with. Commands that are still running
+ * when the gathering ends, because the deadline passed or the mode needs no more results, are cancelled.
+ * Immutable, so one instance can be shared for all executions with the same mode and deadline.
+ */
+public final class ScatterGather {
+
+    private static final Logger LOGGER = LogManager.getLogger(ScatterGather.class);
+
+    public enum Mode {
+        /** waits for all commands until the deadline, the result contains everything that succeeded */
+        ALL,
+        /** ends as soon as the required amount of commands succeeded */
+        FIRST_N,
+        /** ends on the first failure, the result contains values only if all commands succeeded */
+        ALL_OR_NOTHING
+    }
+
+    private final Mode mode;
+    private final int requiredSuccesses;
+    private final long deadlineMillis;
+
+    private ScatterGather(Mode mode, int requiredSuccesses, long deadlineMillis) {
+        this.mode = mode;
+        this.requiredSuccesses = requiredSuccesses;
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    /**
+     * @param aDeadlineMillis time after which all commands still running are cancelled
+     */
+    public static ScatterGather all(long aDeadlineMillis) {
+        return new ScatterGather(Mode.ALL, -1, aDeadlineMillis);
+    }
+
+    /**
+     * @param aRequiredSuccesses amount of successful commands after which the others are cancelled
+     */
+    public static ScatterGather firstN(int aRequiredSuccesses, long aDeadlineMillis) {
+        return new ScatterGather(Mode.FIRST_N, aRequiredSuccesses, aDeadlineMillis);
+    }
+
+    public static ScatterGather allOrNothing(long aDeadlineMillis) {
+        return new ScatterGather(Mode.ALL_OR_NOTHING, -1, aDeadlineMillis);
+    }
+
+    /**
+     * executes all commands concurrently, each command can only be executed once
+     * @return the results and failures gathered until the mode was satisfied or the deadline passed
+     * @throws InterruptedException if the calling thread was interrupted, all commands are cancelled then
+     */
+    public <K> Result<K> execute(Map<K, ? extends UrlJsonQueryCommand<?>> commands) throws InterruptedException {
+        if (mode == Mode.FIRST_N && requiredSuccesses > commands.size()) {
+            throw new IllegalArgumentException("only " + commands.size() + " commands for " + requiredSuccesses + " required successes");
+        }
+        Gathering<K> gathering = new Gathering<>(commands.size(), mode == Mode.FIRST_N ? requiredSuccesses : commands.size(), mode != Mode.ALL);
+        Map<K, Subscription> subscriptions = new LinkedHashMap<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+        try {
+            for (Map.Entry<K, ? extends UrlJsonQueryCommand<?>> command : commands.entrySet()) {
+                K key = command.getKey();
+                subscriptions.put(key, command.getValue().toObservable().subscribe(
+                        value -> gathering.succeeded(key, value),
+                        e -> gathering.failed(key, toApiCommunicationException(e))
+                ));
+            }
+            gathering.await(deadline);
+        } finally {
+            for (K key : gathering.close(commands.keySet())) {
+                Subscription subscription = subscriptions.get(key);
+                if (subscription != null) {
+                    subscription.unsubscribe();
+                }
+                commands.get(key).cancel();
+            }
+        }
+        Result<K> result = gathering.toResult(mode == Mode.ALL_OR_NOTHING);
+        if (!result.getCancelled().isEmpty()) {
+            LOGGER.debug(result.getCancelled().size() + " of " + commands.size() + " commands were cancelled");
+        }
+        return result;
+    }
+
+    /**
+     * @return the ApiCommunicationException a command failed with, or one with the closest ProblemReason if the
+     * command did not get to the service, e.g. because of a hystrix timeout or rejection
+     */
+    static ApiCommunicationException toApiCommunicationException(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ApiCommunicationException) {
+                return (ApiCommunicationException) cause;
+            }
+        }
+        Exception exception = e instanceof Exception ? (Exception) e : new Exception(e);
+        ProblemReason problemReason = ProblemReason.UNKNOWN;
+        if (e instanceof HystrixRuntimeException) {
+            switch (((HystrixRuntimeException) e).getFailureType()) {
+                case REJECTED_THREAD_EXECUTION:
+                case REJECTED_SEMAPHORE_EXECUTION:
+                    problemReason = ProblemReason.OVERLOADED;
+                    break;
+                case TIMEOUT:
+                case SHORTCIRCUIT:
+                    problemReason = ProblemReason.CONNECTION_IMPOSSIBLE;
+                    break;
+            }
+        }
+        return new ApiCommunicationException(e.getMessage(), exception, problemReason);
+    }
+
+    /**
+     * state of one execution, the callbacks of the commands arrive on their own threads
+     */
+    private static class Gathering<K> {
+
+        private final int total;
+        private final int requiredSuccesses;
+        private final boolean failFast;
+        private final Map<K, Object> values = new LinkedHashMap<>();
+        private final Map<K, ApiCommunicationException> failures = new LinkedHashMap<>();
+        private final Set<K> running = new LinkedHashSet<>();
+        private boolean closed;
+
+        /**
+         * @param failFast if true, the gathering ends as soon as the required successes can not be reached anymore
+         */
+        private Gathering(int total, int requiredSuccesses, boolean failFast) {
+            this.total = total;
+            this.requiredSuccesses = requiredSuccesses;
+            this.failFast = failFast;
+        }
+
+        private synchronized void succeeded(K key, Object value) {
+            if (!closed) {
+                values.put(key, value);
+                notifyAll();
+            }
+        }
+
+        private synchronized void failed(K key, ApiCommunicationException failure) {
+            if (!closed) {
+                failures.put(key, failure);
+                notifyAll();
+            }
+        }
+
+        private synchronized boolean isDone() {
+            return values.size() + failures.size() >= total
+                    || values.size() >= requiredSuccesses
+                    || failFast && failures.size() > total - requiredSuccesses;
+        }
+
+        private synchronized void await(long deadlineNanos) throws InterruptedException {
+            long remaining;
+            while (!isDone() && (remaining = deadlineNanos - System.nanoTime()) > 0) {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        }
+
+        /**
+         * ignores all later callbacks
+         * @return keys of the commands that did not finish
+         */
+        private synchronized Set<K> close(Set<K> keys) {
+            closed = true;
+            for (K key : keys) {
+                if (!values.containsKey(key) && !failures.containsKey(key)) {
+                    running.add(key);
+                }
+            }
+            return running;
+        }
+
+        private synchronized Result<K> toResult(boolean allOrNothing) {
+            boolean successful = values.size() >= requiredSuccesses;
+            Map<K, Object> resultValues = allOrNothing && !successful ? Collections.<K, Object>emptyMap() : values;
+            return new Result<>(resultValues, failures, running, successful);
+        }
+    }
+
+    /**
+     * results of the commands that succeeded, failures of the others and the keys of cancelled ones
+     */
+    public static final class Result<K> {
+
+        private final Map<K, Object> values;
+        private final Map<K, ApiCommunicationException> failures;
+        private final Set<K> cancelled;
+        private final boolean successful;
+
+        private Result(Map<K, Object> values, Map<K, ApiCommunicationException> failures, Set<K> cancelled, boolean successful) {
+            this.values = Collections.unmodifiableMap(new LinkedHashMap<>(values));
+            this.failures = Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+            this.cancelled = Collections.unmodifiableSet(new LinkedHashSet<>(cancelled));
+            this.successful = successful;
+        }
+
+        /**
+         * @return the result of the command with the key, null if it did not succeed
+         */
+        @SuppressWarnings("unchecked")
+        public <T> T get(K key) {
+            return (T) values.get(key);
+        }
+
+        public boolean hasValue(K key) {
+            return values.containsKey(key);
+        }
+
+        public Map<K, Object> getValues() {
+            return values;
+        }
+
+        /**
+         * @return the exceptions of the failed commands, each with its ProblemReason
+         */
+        public Map<K, ApiCommunicationException> getFailures() {
+            return failures;
+        }
+
+        /**
+         * @return the reason the command with the key failed, null if it did not fail
+         */
+        public ProblemReason getProblemReason(K key) {
+            ApiCommunicationException failure = failures.get(key);
+            return failure != null ? failure.getProblemReason() : null;
+        }
+
+        /**
+         * @return keys of the commands that were still running when the gathering ended
+         */
+        public Set<K> getCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * @return true if enough commands succeeded for the mode, i.e. all of them unless the mode is FIRST_N
+         */
+        public boolean isSuccessful() {
+            return successful;
+        }
+    }
+}
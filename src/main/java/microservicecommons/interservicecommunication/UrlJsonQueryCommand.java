@@ -1,25 +1,38 @@
 package microservicecommons.interservicecommunication;
 
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.netflix.hystrix.HystrixCommand;
 import com.netflix.hystrix.HystrixCommandGroupKey;
 import com.netflix.hystrix.HystrixCommandProperties;
 import com.netflix.hystrix.strategy.concurrency.HystrixRequestContext;
+import microservicecommons.interservicecommunication.cache.RequestKey;
+import microservicecommons.interservicecommunication.coalescing.InFlightRequests;
 import microservicecommons.interservicecommunication.exception.ApiCommunicationException;
+import microservicecommons.interservicecommunication.fallback.FallbackStore;
+import microservicecommons.interservicecommunication.fallback.StaleValue;
+import microservicecommons.interservicecommunication.hedging.HedgingPolicy;
+import microservicecommons.interservicecommunication.json.ObjectMapperRegistry;
+import microservicecommons.interservicecommunication.limiting.AdaptiveConcurrencyLimiter;
+import microservicecommons.interservicecommunication.loadbalancing.LoadBalancer;
+import microservicecommons.interservicecommunication.metrics.CommandMetrics;
+import microservicecommons.interservicecommunication.metrics.CommandMetricsHolder;
+import microservicecommons.interservicecommunication.metrics.TimedInputStream;
+import microservicecommons.interservicecommunication.model.QueryOptions;
+import microservicecommons.interservicecommunication.model.RetryBudget;
 import microservicecommons.interservicecommunication.model.RetryOptions;
-import org.apache.commons.io.IOUtils;
+import microservicecommons.interservicecommunication.transport.HttpRequest;
+import microservicecommons.interservicecommunication.transport.HttpResponse;
+import microservicecommons.interservicecommunication.transport.HttpTransport;
+import microservicecommons.interservicecommunication.transport.HttpTransports;
+import microservicecommons.interservicecommunication.transport.RequestBodies;
+import microservicecommons.interservicecommunication.transport.RequestBody;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.StringWriter;
-import java.net.HttpURLConnection;
 import java.net.URL;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -38,138 +51,385 @@ public abstract class UrlJsonQueryCommand<T> extends HystrixCommand<T> {
     private boolean cachingEnabled;
     private final Map<String,String> headers;
     private final String method;
-    private final String postData;
+    private final RequestBody requestBody;
     private RetryOptions retryOptions;
+    private final QueryOptions queryOptions;
+    private volatile long staleAgeMillis = -1;
+    private final Object cancelLock = new Object();
+    private boolean cancelled;
+    private Thread runThread;
 
     public UrlJsonQueryCommand(String aCommandName, URL aQueryUrl, Class aJsonMappingClass, boolean aCachingEnabled, String commandGroup){
         this(aCommandName,aQueryUrl,aJsonMappingClass,aCachingEnabled,commandGroup,new RetryOptions(0, RetryOptions.RetryFunctionType.LINEAR),DEFAULT_TIMEOUT);
     }
 
     public UrlJsonQueryCommand(String aCommandName, URL aQueryUrl, Class aJsonMappingClass, boolean aCachingEnabled, String commandGroup, RetryOptions aRetryOptions, Integer aTimeout){
-        super(Setter.withGroupKey(HystrixCommandGroupKey.Factory.asKey(commandGroup))
-                .andCommandPropertiesDefaults(HystrixCommandProperties.Setter()
-                        .withRequestLogEnabled(false)
-                        .withExecutionTimeoutInMilliseconds(aTimeout)));
-        commandName = aCommandName;
-        queryUrl = aQueryUrl;
-        jsonMappingClass = aJsonMappingClass;
-        cachingEnabled = aCachingEnabled;
-        headers = new HashMap<>();
-        method = "GET";
-        postData = "";
-        retryOptions = aRetryOptions;
+        this(aCommandName,aQueryUrl,new HashMap<>(),"GET",aJsonMappingClass,aCachingEnabled,commandGroup,"",aRetryOptions,aTimeout,QueryOptions.DEFAULT);
     }
 
     public UrlJsonQueryCommand(String aCommandName, URL aQueryUrl, Map<String,String> aHeaders, String aMethod, Class aJsonMappingClass, boolean aCachingEnabled, String commandGroup, String aPostData){
-        super(Setter.withGroupKey(HystrixCommandGroupKey.Factory.asKey(commandGroup))
-                .andCommandPropertiesDefaults(HystrixCommandProperties.Setter()
-                        .withRequestLogEnabled(false)
-                        .withExecutionTimeoutInMilliseconds(DEFAULT_TIMEOUT)));
+        this(aCommandName,aQueryUrl,aHeaders,aMethod,aJsonMappingClass,aCachingEnabled,commandGroup,aPostData,new RetryOptions(0, RetryOptions.RetryFunctionType.LINEAR),DEFAULT_TIMEOUT,QueryOptions.DEFAULT);
+    }
+
+    public UrlJsonQueryCommand(String aCommandName, URL aQueryUrl, Map<String,String> aHeaders, String aMethod, Class aJsonMappingClass, boolean aCachingEnabled, String commandGroup, String aPostData, RetryOptions aRetryOptions, Integer aTimeout, QueryOptions aQueryOptions){
+        this(aCommandName,aQueryUrl,aHeaders,aMethod,aJsonMappingClass,aCachingEnabled,commandGroup,
+                aMethod.equals("POST") && aPostData != null ? RequestBodies.ofString(aPostData, null) : null,
+                aRetryOptions,aTimeout,aQueryOptions);
+    }
+
+    /**
+     * @param aRequestBody body sent with any method, null for none. A body from a stream can only be sent once, so such
+     *                     a request is not retried.
+     */
+    public UrlJsonQueryCommand(String aCommandName, URL aQueryUrl, Map<String,String> aHeaders, String aMethod, Class aJsonMappingClass, boolean aCachingEnabled, String commandGroup, RequestBody aRequestBody, RetryOptions aRetryOptions, Integer aTimeout, QueryOptions aQueryOptions){
+        this(setter(commandGroup, aTimeout),aCommandName,aQueryUrl,aHeaders,aMethod,aJsonMappingClass,aCachingEnabled,aRequestBody,aRetryOptions,aQueryOptions);
+    }
+
+    /**
+     * for commands created often with the same settings, e.g. by a CommandTemplate, which builds the setter only once
+     * @param aSetter hystrix settings as built by setter(commandGroup, timeout)
+     */
+    protected UrlJsonQueryCommand(Setter aSetter, String aCommandName, URL aQueryUrl, Map<String,String> aHeaders, String aMethod, Class aJsonMappingClass, boolean aCachingEnabled, RequestBody aRequestBody, RetryOptions aRetryOptions, QueryOptions aQueryOptions){
+        super(aSetter);
         commandName = aCommandName;
         queryUrl = aQueryUrl;
         jsonMappingClass = aJsonMappingClass;
         cachingEnabled = aCachingEnabled;
         headers = aHeaders;
         method = aMethod;
-        postData = aPostData;
-        retryOptions = new RetryOptions(0, RetryOptions.RetryFunctionType.LINEAR);
+        requestBody = aRequestBody;
+        retryOptions = aRetryOptions;
+        queryOptions = aQueryOptions;
+    }
+
+    /**
+     * @return the hystrix settings of a command in the group with the timeout in ms for all tries together
+     */
+    protected static Setter setter(String commandGroup, Integer aTimeout) {
+        return Setter.withGroupKey(HystrixCommandGroupKey.Factory.asKey(commandGroup))
+                .andCommandPropertiesDefaults(HystrixCommandProperties.Setter()
+                        .withRequestLogEnabled(false)
+                        .withExecutionTimeoutInMilliseconds(aTimeout));
     }
 
     @Override
     protected T run() throws Exception {
-        //TODO the timeout should be counted for a single request, not for all tries together
-        HttpURLConnection connection = null;
-        InputStream inputStream = null;
-        for(int i = 0; i<retryOptions.getMaxAmountRetries()+1; i++) {
+        synchronized (cancelLock) {
+            if (cancelled) {
+                throw new InterruptedException("command " + commandName + " was cancelled");
+            }
+            runThread = Thread.currentThread();
+        }
+        try {
+            return runUncancelled();
+        } finally {
+            synchronized (cancelLock) {
+                runThread = null;
+                if (cancelled) {
+                    // the pool thread is reused, so the interrupt must not reach the next command
+                    Thread.interrupted();
+                }
+            }
+        }
+    }
+
+    /**
+     * stops the execution: no further tries are made, and waiting for a connection or for the next try is interrupted.
+     * A try that is reading from the network already ends at the latest with its read timeout.
+     */
+    void cancel() {
+        synchronized (cancelLock) {
+            cancelled = true;
+            if (runThread != null) {
+                runThread.interrupt();
+            }
+        }
+    }
+
+    boolean isCancelled() {
+        synchronized (cancelLock) {
+            return cancelled;
+        }
+    }
+
+    private T runUncancelled() throws Exception {
+        HttpRequest request = buildRequest();
+        T result;
+        if (queryOptions.isCoalescingEnabled() && isIdempotent()) {
+            // the result depends on the target type as well, so it is part of the key
+            result = InFlightRequests.getDefault().execute(
+                    Arrays.asList(RequestKey.of(request, headers.keySet()), jsonMappingClass),
+                    () -> fetch(request)
+            );
+        } else {
+            result = fetch(request);
+        }
+        // a stale result or a replay of a write would pretend it happened, so only reads are stored
+        FallbackStore fallbackStore = isIdempotent() ? queryOptions.getFallbackStore() : null;
+        if (fallbackStore != null && result != null) {
+            fallbackStore.put(fallbackKey(request), result);
+        }
+        return result;
+    }
+
+    private HttpRequest buildRequest() {
+        HttpRequest request = new HttpRequest(
+                queryUrl,
+                method,
+                headers,
+                requestBody,
+                retryOptions.getConnectTimeout(),
+                retryOptions.getReadTimeout()
+        );
+        String accept = getAcceptHeader();
+        if (accept != null && !containsHeader("Accept")) {
+            request = request.withHeader("Accept", accept);
+        }
+        return request;
+    }
+
+    /**
+     * header values are hashed, so credentials are never written to the file of the fallback store, but callers with
+     * different credentials never get each other's results
+     */
+    private String fallbackKey(HttpRequest request) {
+        return jsonMappingClass.getName() + " " + RequestKey.withHashedHeaders(request);
+    }
+
+    private T fetch(HttpRequest request) throws Exception {
+        HttpResponse response = executeWithRetries(request);
+        try {
+            CommandMetrics metrics = getCommandMetrics();
+            if (!metrics.isEnabled()) {
+                T result = readResponse(response.getBody(), response.getHeader("Content-Type"));
+                response.close();
+                return result;
+            }
+            TimedInputStream body = new TimedInputStream(response.getBody());
+            long start = System.nanoTime();
+            T result = readResponse(body, response.getHeader("Content-Type"));
+            metrics.recordBodyRead(commandName, body.getReadNanos());
+            metrics.recordDeserialization(commandName, System.nanoTime() - start - body.getReadNanos());
+            metrics.recordResponseSize(commandName, body.getBytesRead());
+            response.close();
+            return result;
+        } catch (Exception e) {
+            // the rest of a body that failed to read is not worth draining, the connection is dropped
+            response.abort();
+            throw e;
+        }
+    }
+
+    /**
+     * maps the body of a successful response to the result of this command, depending on its content type.
+     * Override for other formats than json.
+     * @param contentType value of the Content-Type header of the response, may be null
+     */
+    protected T readResponse(InputStream body, String contentType) throws IOException {
+        return readResponse(body);
+    }
+
+    /**
+     * maps the json body of a successful response to the result of this command. Override for other ways of reading
+     * it, e.g. streaming.
+     */
+    protected T readResponse(InputStream body) throws IOException {
+        // shared reader, so Jackson does not have to introspect jsonMappingClass again for every call
+        ObjectReader reader = ObjectMapperRegistry.getDefault().getReader(jsonMappingClass);
+
+        T result = reader.readValue(body);
+
+        return result;
+    }
+
+    /**
+     * @return the Accept header sent unless the headers of the command contain one, null for none
+     */
+    protected String getAcceptHeader() {
+        return null;
+    }
+
+    private boolean containsHeader(String name) {
+        for (String header : headers.keySet()) {
+            if (header.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    protected Class getJsonMappingClass() {
+        return jsonMappingClass;
+    }
+
+    protected QueryOptions getQueryOptions() {
+        return queryOptions;
+    }
+
+    /**
+     * the transport all requests of this command are executed with. Override to use another one than the process-wide
+     * default of HttpTransports.
+     */
+    protected HttpTransport getTransport() {
+        return HttpTransports.getDefault();
+    }
+
+    /**
+     * the metrics all executions of this command are recorded to. Override to use another one than the process-wide
+     * default of CommandMetricsHolder.
+     */
+    protected CommandMetrics getCommandMetrics() {
+        return CommandMetricsHolder.getDefault();
+    }
+
+    /**
+     * executes the request, with retries according to the retryOptions
+     * @return a successful response, has to be closed by the caller
+     * @throws ApiCommunicationException if the last try failed, with the problem reason depending on the status code
+     */
+    private HttpResponse executeWithRetries(HttpRequest request) throws ApiCommunicationException, InterruptedException {
+        // the timeouts of the retryOptions apply to each try, the hystrix timeout to all tries together
+        HttpTransport transport = getTransport();
+        LoadBalancer loadBalancer = queryOptions.getLoadBalancer();
+        if (loadBalancer != null) {
+            // every try, including hedge requests, picks its own instance
+            HttpTransport instanceTransport = transport;
+            transport = instanceRequest -> loadBalancer.execute(instanceTransport, instanceRequest);
+        }
+        AdaptiveConcurrencyLimiter concurrencyLimiter = queryOptions.getConcurrencyLimiter();
+        if (concurrencyLimiter != null) {
+            HttpTransport limitedTransport = transport;
+            transport = limitedRequest -> concurrencyLimiter.execute(limitedTransport, limitedRequest);
+        }
+        RetryBudget retryBudget = retryOptions.getRetryBudget();
+        if (retryBudget != null) {
+            retryBudget.recordRequest();
+        }
+        HedgingPolicy hedgingPolicy = isIdempotent() ? queryOptions.getHedgingPolicy() : null;
+        CommandMetrics metrics = getCommandMetrics();
+        long delay = retryOptions.getBaseDelayMillis();
+        for(int i = 0; ; i++) {
+            ApiCommunicationException failure;
             try {
-                connection = (HttpURLConnection) queryUrl.openConnection();
-                connection.setRequestMethod(method);
-                for (Map.Entry<String, String> header : headers.entrySet()) {
-                    connection.setRequestProperty(header.getKey(), header.getValue());
+                HttpResponse response = hedgingPolicy != null ? hedgingPolicy.execute(transport, request) : transport.execute(request);
+                if (metrics.isEnabled() && response.getConnectNanos() >= 0) {
+                    metrics.recordConnect(commandName, response.getConnectNanos());
+                    metrics.recordTimeToFirstByte(commandName, response.getTimeToFirstByteNanos());
                 }
-                if (method.equals("POST")) {
-                    byte[] postDataBytes = postData.getBytes(StandardCharsets.UTF_8);
-                    connection.setDoOutput(true);
-                    connection.setRequestProperty("Content-Length", Integer.toString(postDataBytes.length));
-                    OutputStream outputStream = connection.getOutputStream();
-                    outputStream.write(postDataBytes);
-                    outputStream.flush();
-                    outputStream.close();
+                if (response.isSuccessful()) {
+                    return response;
                 }
-                inputStream = connection.getInputStream();
-                break;//no more tries
+                failure = toException(response);
             } catch (IOException e) {
-                if(i>=retryOptions.getMaxAmountRetries()) {
-                    LOGGER.warn("retry exhausted after "+i+1+" tries.");
-
-                    Integer responseCode = null;
-                    String errorResponse = "";
-                    try {
-                        // try to get response code
-                        if(connection != null) {
-                            responseCode = connection.getResponseCode();
-                        }
-                        // try to get message from server
-                        StringWriter errorStringWriter = new StringWriter();
-                        IOUtils.copy(connection.getErrorStream(), errorStringWriter, Charset.defaultCharset());
-                        errorResponse = errorStringWriter.toString();
-                    } catch (Exception e2){}
-
-                    if(responseCode != null) {
-                            // throw exception depending on error reason
-                            switch (responseCode) {
-                                case 501:
-                                    throw new ApiCommunicationException(
-                                            e.getMessage()+". Server returned: "+errorResponse,
-                                            e,
-                                            ApiCommunicationException.ProblemReason.SERVER_UNABLE
-                                    );
-                                case 400:
-                                    throw new ApiCommunicationException(
-                                            e.getMessage()+". Server returned: "+errorResponse,
-                                            e,
-                                            ApiCommunicationException.ProblemReason.CLIENT_MISTAKE
-                                    );
-                                case 500:
-                                    throw new ApiCommunicationException(
-                                            e.getMessage()+". Server returned: "+errorResponse,
-                                            e,
-                                            ApiCommunicationException.ProblemReason.SERVER_ERROR
-                                    );
-                        }
-                    }
-                    // throw default exception if reason could not be determined
-                    throw new ApiCommunicationException(
-                            e.getMessage()+". Server returned: "+errorResponse,
-                            e,
-                            ApiCommunicationException.ProblemReason.CONNECTION_IMPOSSIBLE
-                    );
-                } else {
-                    //make another try
-                    LOGGER.debug("command "+commandName+" failed due to exception: "+e.getMessage()+". Starting retry soon...");
-                    LOGGER.debug(e);
-                    retryOptions.getOnEachRetry().apply(i+1);
-                    if(retryOptions.getRetryFunctionType() == RetryOptions.RetryFunctionType.EXPONENTIAL){
-                        //quadratische Steigerung der Wartezeit, beginnend mit 500ms
-                        Thread.sleep(new Double((500/2)*Math.pow(2,i+1)).longValue());
-                    } else { //type LINEAR
-                        Thread.sleep(500);
-                    }
+                failure = ApiCommunicationException.forConnectionProblem(e);
+            }
+
+            if(i>=retryOptions.getMaxAmountRetries()) {
+                LOGGER.warn("retry exhausted after "+(i+1)+" tries.");
+                throw failure;
+            } else if(isCancelled()) {
+                LOGGER.debug("command "+commandName+" was cancelled, it is not retried.");
+                throw failure;
+            } else if(requestBody != null && !requestBody.isRepeatable()) {
+                LOGGER.debug("command "+commandName+" failed, its request body can not be sent again.");
+                throw failure;
+            } else if(!retryOptions.isRetryable(failure)) {
+                LOGGER.debug("command "+commandName+" failed with "+failure.getProblemReason()+", which is not retried.");
+                throw failure;
+            } else if(retryBudget != null && !retryBudget.tryAcquireRetry()) {
+                LOGGER.warn("retry budget exhausted, command "+commandName+" is not retried.");
+                throw failure;
+            } else {
+                //make another try
+                LOGGER.debug("command "+commandName+" failed due to exception: "+failure.getMessage()+". Starting retry soon...");
+                LOGGER.debug(failure);
+                retryOptions.getOnEachRetry().apply(i+1);
+                delay = retryOptions.getDelayMillis(i+1, delay);
+                if (metrics.isEnabled()) {
+                    metrics.recordRetry(commandName, failure.getProblemReason(), delay);
                 }
+                Thread.sleep(delay);
             }
         }
+    }
 
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-
-        T result =  (T) mapper.readValue(inputStream, jsonMappingClass);
+    private boolean isIdempotent() {
+        return method.equals("GET") || method.equals("HEAD");
+    }
 
-        return result;
+    /**
+     * creates the exception for a response with an error status code, and releases the response
+     */
+    private ApiCommunicationException toException(HttpResponse response) {
+        String errorResponse = "";
+        try {
+            // try to get message from server
+            errorResponse = response.readBodyAsString();
+        } catch (IOException e) {
+        } finally {
+            response.close();
+        }
+        // exception depending on error reason
+        return ApiCommunicationException.forErrorResponse(queryUrl, response.getStatusCode(), errorResponse);
     }
 
+    /**
+     * serves the last successful result of the same request from the fallback store of the queryOptions, and refreshes
+     * it in the background. The refresh bypasses hystrix, the fallback store limits it to one per request at a time.
+     * No refresh is started while the circuit is open.
+     * Only GET and HEAD requests are stored and served, and only for transient failures, see isTransientFailure.
+     * Otherwise, or without a stored result, the command fails as before.
+     */
     @Override
     protected T getFallback() {
-        return super.getFallback();//TODO implement fallback
+        FallbackStore fallbackStore = isIdempotent() ? queryOptions.getFallbackStore() : null;
+        if (fallbackStore != null && isTransientFailure()) {
+            HttpRequest request = buildRequest();
+            String key = fallbackKey(request);
+            StaleValue<T> stale = fallbackStore.get(key, jsonMappingClass);
+            if (stale != null) {
+                LOGGER.debug("command " + commandName + " failed, serving a result received " + stale.getAgeMillis() + "ms ago.");
+                staleAgeMillis = stale.getAgeMillis();
+                if (!isCircuitBreakerOpen()) {
+                    // while the circuit is open, hystrix lets single requests through to find out if the service is back
+                    fallbackStore.refreshAsync(key, () -> fetch(request));
+                }
+                return stale.getValue();
+            }
+        }
+        return super.getFallback();
+    }
+
+    /**
+     * @return true if the execution failed in a way that may go away by itself, e.g. a timeout, an open circuit or a
+     * 503. False for failures a stale result would hide, e.g. a 404 or a response that could not be read.
+     */
+    private boolean isTransientFailure() {
+        if (isResponseTimedOut() || isResponseShortCircuited() || isResponseRejected()) {
+            return true;
+        }
+        Throwable failure = getFailedExecutionException();
+        if (!(failure instanceof ApiCommunicationException)) {
+            return false;
+        }
+        ApiCommunicationException apiFailure = (ApiCommunicationException) failure;
+        switch (apiFailure.getProblemReason()) {
+            case SERVER_ERROR:
+            case CONNECTION_IMPOSSIBLE:
+            case OVERLOADED:
+                // forStatusCode maps unknown status codes, 404 among them, to CONNECTION_IMPOSSIBLE as well
+                Integer statusCode = apiFailure.getStatusCode();
+                return statusCode == null || statusCode >= 500 || statusCode == 408 || statusCode == 429;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return age in ms of the result if it is a stale one from the fallback store, -1 otherwise
+     */
+    public long getStaleAgeMillis() {
+        return staleAgeMillis;
     }
 
     @Override
@@ -0,0 +1,52 @@
+package microservicecommons.interservicecommunication;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectReader;
+import microservicecommons.interservicecommunication.json.ObjectMapperRegistry;
+import microservicecommons.interservicecommunication.model.RetryOptions;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.function.Consumer;
+
+/**
+ * command for queries that are an url that returns a (large) json array.
+ * Instead of mapping the whole array into memory, the elements are parsed one after another and handed to the
+ * elementConsumer while the response is still being read, so memory usage does not depend on the response size.
+ * The command's result is the amount of consumed elements.
+ * Retries only apply until the response starts, a failure while streaming fails the command after some elements may
+ * already have been consumed.
+ */
+public abstract class UrlJsonStreamCommand<T> extends UrlJsonQueryCommand<Long> {
+
+    private final Class<T> elementClass;
+
+    private final Consumer<T> elementConsumer;
+
+    public UrlJsonStreamCommand(String aCommandName, URL aQueryUrl, Class<T> aElementClass, Consumer<T> aElementConsumer, String commandGroup) {
+        super(aCommandName, aQueryUrl, aElementClass, false, commandGroup);
+        elementClass = aElementClass;
+        elementConsumer = aElementConsumer;
+    }
+
+    public UrlJsonStreamCommand(String aCommandName, URL aQueryUrl, Class<T> aElementClass, Consumer<T> aElementConsumer, String commandGroup, RetryOptions aRetryOptions, Integer aTimeout) {
+        super(aCommandName, aQueryUrl, aElementClass, false, commandGroup, aRetryOptions, aTimeout);
+        elementClass = aElementClass;
+        elementConsumer = aElementConsumer;
+    }
+
+    @Override
+    protected Long readResponse(InputStream body) throws IOException {
+        ObjectReader reader = ObjectMapperRegistry.getDefault().getReader(elementClass);
+        long count = 0;
+        // a top-level array is unwrapped by the MappingIterator, only the current element is held in memory
+        try (MappingIterator<T> elements = reader.readValues(body)) {
+            while (elements.hasNextValue()) {
+                elementConsumer.accept(elements.nextValue());
+                count++;
+            }
+        }
+        return count;
+    }
+}
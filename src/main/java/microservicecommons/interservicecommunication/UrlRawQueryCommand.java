@@ -0,0 +1,70 @@
+package microservicecommons.interservicecommunication;
+
+import microservicecommons.interservicecommunication.model.QueryOptions;
+import microservicecommons.interservicecommunication.model.RetryOptions;
+import microservicecommons.interservicecommunication.raw.ByteBufferPool;
+import microservicecommons.interservicecommunication.raw.RawBody;
+import microservicecommons.interservicecommunication.transport.RequestBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * command for queries whose body is forwarded unchanged, e.g. by a gateway. The body is not parsed, but read into a
+ * buffer of the ByteBufferPool, which goes back to the pool when the RawBody is closed:
+ * <pre>
+ * try (RawBody body = new UrlRawQueryCommand("getUser", url, "gateway") {}.execute()) {
+ *     body.writeTo(outputStream);
+ * }
+ * </pre>
+ * Error responses fail the command with the same ApiCommunicationException.ProblemReason as in UrlJsonQueryCommand.
+ * A pooled buffer must have a single owner, so requests are never coalesced, cached by hystrix or stored as fallback.
+ * Bodies larger than a pooled buffer are read into a larger buffer allocated for the request. The buffer of a command
+ * that timed out while reading is left to the garbage collector.
+ */
+public abstract class UrlRawQueryCommand extends UrlJsonQueryCommand<RawBody> {
+
+    public UrlRawQueryCommand(String aCommandName, URL aQueryUrl, String commandGroup) {
+        this(aCommandName, aQueryUrl, new HashMap<>(), "GET", commandGroup, null, new RetryOptions(0, RetryOptions.RetryFunctionType.LINEAR), 20000, QueryOptions.DEFAULT);
+    }
+
+    public UrlRawQueryCommand(String aCommandName, URL aQueryUrl, Map<String,String> aHeaders, String aMethod, String commandGroup, RequestBody aRequestBody, RetryOptions aRetryOptions, Integer aTimeout, QueryOptions aQueryOptions) {
+        super(aCommandName, aQueryUrl, aHeaders, aMethod, RawBody.class, false, commandGroup, aRequestBody, aRetryOptions, aTimeout,
+                aQueryOptions.withCoalescing(false).withFallbackStore(null));
+    }
+
+    /**
+     * the pool the bodies are read into. Override to use another one than the process-wide default.
+     */
+    protected ByteBufferPool getBufferPool() {
+        return ByteBufferPool.getDefault();
+    }
+
+    @Override
+    protected RawBody readResponse(InputStream body, String contentType) throws IOException {
+        ByteBufferPool pool = getBufferPool();
+        ByteBuffer buffer = pool.acquire();
+        try {
+            int read;
+            while ((read = body.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining())) != -1) {
+                buffer.position(buffer.position() + read);
+                if (!buffer.hasRemaining()) {
+                    ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+                    buffer.flip();
+                    larger.put(buffer);
+                    pool.release(buffer);
+                    buffer = larger;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            pool.release(buffer);
+            throw e;
+        }
+        buffer.flip();
+        return new RawBody(buffer, contentType, pool);
+    }
+}
@@ -0,0 +1,98 @@
+package microservicecommons.interservicecommunication;
+
+import microservicecommons.interservicecommunication.model.QueryOptions;
+import microservicecommons.interservicecommunication.model.RetryOptions;
+import microservicecommons.interservicecommunication.raw.ByteBufferPool;
+import microservicecommons.interservicecommunication.transport.RequestBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * command for queries whose body is forwarded unchanged, e.g. by a gateway, without holding it in memory. The body is
+ * not parsed, but copied to the caller's OutputStream or WritableByteChannel through a buffer of the ByteBufferPool,
+ * while the response is still being read. The command's result is the amount of transferred bytes.
+ * Error responses fail the command with the same ApiCommunicationException.ProblemReason as in UrlJsonQueryCommand.
+ * Retries only apply until the response starts, a failure while transferring fails the command after a part of the
+ * body may already have been written. The target is written by a single command, so requests are never coalesced,
+ * cached by hystrix or stored as fallback.
+ * A transfer takes as long as the body, so the timeout is always given by the caller. A timeout or cancel stops the
+ * transfer between two chunks and drops the connection. After a failed execute the target holds an incomplete body and
+ * may still be written by the hystrix thread for one chunk, so it must not be used any more.
+ */
+public abstract class UrlRawTransferCommand extends UrlJsonQueryCommand<Long> {
+
+    private final BufferWriter target;
+
+    public UrlRawTransferCommand(String aCommandName, URL aQueryUrl, OutputStream aTarget, String commandGroup, Integer aTimeout) {
+        this(aCommandName, aQueryUrl, new HashMap<>(), "GET", aTarget, commandGroup, null, new RetryOptions(0, RetryOptions.RetryFunctionType.LINEAR), aTimeout, QueryOptions.DEFAULT);
+    }
+
+    public UrlRawTransferCommand(String aCommandName, URL aQueryUrl, WritableByteChannel aTarget, String commandGroup, Integer aTimeout) {
+        this(aCommandName, aQueryUrl, new HashMap<>(), "GET", aTarget, commandGroup, null, new RetryOptions(0, RetryOptions.RetryFunctionType.LINEAR), aTimeout, QueryOptions.DEFAULT);
+    }
+
+    public UrlRawTransferCommand(String aCommandName, URL aQueryUrl, Map<String,String> aHeaders, String aMethod, OutputStream aTarget, String commandGroup, RequestBody aRequestBody, RetryOptions aRetryOptions, Integer aTimeout, QueryOptions aQueryOptions) {
+        this(aCommandName, aQueryUrl, aHeaders, aMethod, buffer -> aTarget.write(buffer.array(), buffer.arrayOffset(), buffer.limit()),
+                commandGroup, aRequestBody, aRetryOptions, aTimeout, aQueryOptions);
+    }
+
+    public UrlRawTransferCommand(String aCommandName, URL aQueryUrl, Map<String,String> aHeaders, String aMethod, WritableByteChannel aTarget, String commandGroup, RequestBody aRequestBody, RetryOptions aRetryOptions, Integer aTimeout, QueryOptions aQueryOptions) {
+        this(aCommandName, aQueryUrl, aHeaders, aMethod, buffer -> {
+                    while (buffer.hasRemaining()) {
+                        aTarget.write(buffer);
+                    }
+                },
+                commandGroup, aRequestBody, aRetryOptions, aTimeout, aQueryOptions);
+    }
+
+    private UrlRawTransferCommand(String aCommandName, URL aQueryUrl, Map<String,String> aHeaders, String aMethod, BufferWriter aTarget, String commandGroup, RequestBody aRequestBody, RetryOptions aRetryOptions, Integer aTimeout, QueryOptions aQueryOptions) {
+        super(aCommandName, aQueryUrl, aHeaders, aMethod, Long.class, false, commandGroup, aRequestBody, aRetryOptions, aTimeout,
+                aQueryOptions.withCoalescing(false).withFallbackStore(null));
+        target = aTarget;
+    }
+
+    /**
+     * the pool the transfer buffer is taken from. Override to use another one than the process-wide default.
+     */
+    protected ByteBufferPool getBufferPool() {
+        return ByteBufferPool.getDefault();
+    }
+
+    @Override
+    protected Long readResponse(InputStream body) throws IOException {
+        ByteBufferPool pool = getBufferPool();
+        ByteBuffer buffer = pool.acquire();
+        try {
+            long transferred = 0;
+            int read;
+            while ((read = body.read(buffer.array(), buffer.arrayOffset(), buffer.capacity())) != -1) {
+                if (Thread.currentThread().isInterrupted() || isCancelled()) {
+                    // the response is aborted by the caller, so the connection is not drained
+                    throw new InterruptedIOException("transfer of command " + getCommandKey().name() + " was stopped after " + transferred + " bytes");
+                }
+                buffer.limit(read);
+                target.write(buffer);
+                buffer.clear();
+                transferred += read;
+            }
+            return transferred;
+        } finally {
+            pool.release(buffer);
+        }
+    }
+
+    /**
+     * writes the buffer from position 0 to its limit
+     */
+    private interface BufferWriter {
+        void write(ByteBuffer buffer) throws IOException;
+    }
+}
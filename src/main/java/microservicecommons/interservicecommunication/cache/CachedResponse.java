@@ -0,0 +1,131 @@
+package microservicecommons.interservicecommunication.cache;
+
+import microservicecommons.interservicecommunication.transport.BufferedHttpResponse;
+import microservicecommons.interservicecommunication.transport.HttpResponse;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * a response held by the ResponseCache, with its expiry derived from the Cache-Control / Expires headers
+ */
+public class CachedResponse {
+
+    private final BufferedHttpResponse response;
+
+    private final long storedAt;
+
+    private final long expiresAt;
+
+    private CachedResponse(BufferedHttpResponse response, long storedAt, long expiresAt) {
+        this.response = response;
+        this.storedAt = storedAt;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * @param defaultTtlMillis time to live if the response does not state one
+     * @return the entry to cache, or null if the response must not be stored or would be useless in the cache
+     */
+    public static CachedResponse of(BufferedHttpResponse response, long now, long defaultTtlMillis) {
+        if (response.getStatusCode() != 200) {
+            return null;
+        }
+        Long ttl = ttlMillis(response, defaultTtlMillis);
+        if (ttl == null) {
+            return null;
+        }
+        CachedResponse cachedResponse = new CachedResponse(response, now, now + ttl);
+        if (ttl <= 0 && !cachedResponse.hasValidator()) {
+            // would have to be fetched again anyway
+            return null;
+        }
+        return cachedResponse;
+    }
+
+    /**
+     * @param notModified the 304 response of a conditional request, may update the caching headers
+     * @return this entry with a renewed expiry
+     */
+    public CachedResponse revalidated(HttpResponse notModified, long now, long defaultTtlMillis) {
+        Map<String,String> headers = new HashMap<>(response.getHeaders());
+        for (String name : new String[]{"Cache-Control", "Expires", "ETag", "Last-Modified", "Date"}) {
+            String value = notModified.getHeader(name);
+            if (value != null) {
+                headers.put(name, value);
+            }
+        }
+        BufferedHttpResponse updated = new BufferedHttpResponse(response.getStatusCode(), headers, response.getBodyBytes());
+        Long ttl = ttlMillis(updated, defaultTtlMillis);
+        return new CachedResponse(updated, now, now + (ttl != null ? ttl : 0));
+    }
+
+    /**
+     * @return time to live in ms, null if the response must not be stored
+     */
+    private static Long ttlMillis(HttpResponse response, long defaultTtlMillis) {
+        String cacheControl = response.getHeader("Cache-Control");
+        if (cacheControl != null) {
+            for (String directive : cacheControl.toLowerCase().split(",")) {
+                directive = directive.trim();
+                if (directive.equals("no-store")) {
+                    return null;
+                }
+                if (directive.equals("no-cache")) {
+                    return 0L;
+                }
+                if (directive.startsWith("max-age=")) {
+                    try {
+                        return Long.parseLong(directive.substring("max-age=".length())) * 1000;
+                    } catch (NumberFormatException e) {
+                        return 0L;
+                    }
+                }
+            }
+        }
+        String expires = response.getHeader("Expires");
+        if (expires != null) {
+            try {
+                return ZonedDateTime.parse(expires, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli() - System.currentTimeMillis();
+            } catch (DateTimeParseException e) {
+                // an invalid date means already expired
+                return 0L;
+            }
+        }
+        return defaultTtlMillis;
+    }
+
+    public boolean isFresh(long now) {
+        return now < expiresAt;
+    }
+
+    /**
+     * @return true if the response can be revalidated with a conditional request
+     */
+    public boolean hasValidator() {
+        return getETag() != null || getLastModified() != null;
+    }
+
+    public String getETag() {
+        return response.getHeader("ETag");
+    }
+
+    public String getLastModified() {
+        return response.getHeader("Last-Modified");
+    }
+
+    public BufferedHttpResponse getResponse() {
+        return response;
+    }
+
+    public long getStoredAt() {
+        return storedAt;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+}
@@ -0,0 +1,190 @@
+package microservicecommons.interservicecommunication.cache;
+
+import microservicecommons.interservicecommunication.transport.BufferedHttpResponse;
+import microservicecommons.interservicecommunication.transport.HttpRequest;
+import microservicecommons.interservicecommunication.transport.HttpResponse;
+import microservicecommons.interservicecommunication.transport.HttpTransport;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * HttpTransport that answers repeated requests from a ResponseCache.
+ * Fresh entries are returned without contacting the server, expired entries with an ETag or Last-Modified header are
+ * revalidated with a conditional request, so an unchanged response costs a 304 instead of the whole body.
+ * Enable it process-wide with
+ * <pre>HttpTransports.setDefault(new CachingHttpTransport(new UrlConnectionHttpTransport(), new ResponseCache()));</pre>
+ * or for single commands by overriding UrlJsonQueryCommand.getTransport().
+ */
+public class CachingHttpTransport implements HttpTransport {
+
+    public static final Collection<String> DEFAULT_RELEVANT_HEADERS = Arrays.asList("Accept", "Authorization");
+
+    private final HttpTransport delegate;
+
+    private final ResponseCache cache;
+
+    private final Collection<String> relevantHeaders;
+
+    private final Collection<String> cacheableMethods;
+
+    public CachingHttpTransport(HttpTransport aDelegate, ResponseCache aCache) {
+        this(aDelegate, aCache, DEFAULT_RELEVANT_HEADERS, Collections.singleton("GET"));
+    }
+
+    /**
+     * @param aRelevantHeaders request headers that are part of the cache key
+     * @param aCacheableMethods requests with other methods are passed through uncached
+     */
+    public CachingHttpTransport(HttpTransport aDelegate, ResponseCache aCache, Collection<String> aRelevantHeaders, Collection<String> aCacheableMethods) {
+        delegate = aDelegate;
+        cache = aCache;
+        relevantHeaders = aRelevantHeaders;
+        cacheableMethods = aCacheableMethods;
+    }
+
+    @Override
+    public HttpResponse execute(HttpRequest request) throws IOException {
+        if (!cacheableMethods.contains(request.getMethod())) {
+            return delegate.execute(request);
+        }
+        RequestKey key = RequestKey.of(request, relevantHeaders);
+        long now = System.currentTimeMillis();
+        CachedResponse cached = cache.get(key);
+        if (cached != null && cached.isFresh(now)) {
+            cache.recordHit();
+            return cached.getResponse();
+        }
+
+        HttpRequest actualRequest = request;
+        if (cached != null) {
+            if (cached.getETag() != null) {
+                actualRequest = actualRequest.withHeader("If-None-Match", cached.getETag());
+            }
+            if (cached.getLastModified() != null) {
+                actualRequest = actualRequest.withHeader("If-Modified-Since", cached.getLastModified());
+            }
+        }
+        HttpResponse response = delegate.execute(actualRequest);
+        if (cached != null && response.getStatusCode() == 304) {
+            response.close();
+            CachedResponse revalidated = cached.revalidated(response, now, cache.getDefaultTtlMillis());
+            cache.put(key, revalidated);
+            cache.recordRevalidation();
+            return revalidated.getResponse();
+        }
+
+        cache.recordMiss();
+        if (response.getStatusCode() != 200 || isTooLarge(response)) {
+            return response;
+        }
+        return store(key, response, now);
+    }
+
+    private boolean isTooLarge(HttpResponse response) {
+        String contentLength = response.getHeader("Content-Length");
+        try {
+            return contentLength != null && Long.parseLong(contentLength) > cache.getMaxEntryBytes();
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * buffers the response and puts it into the cache if it is allowed to be stored
+     */
+    private HttpResponse store(RequestKey key, HttpResponse response, long now) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try {
+            InputStream body = response.getBody();
+            byte[] chunk = new byte[8192];
+            int read;
+            while ((read = body.read(chunk)) != -1) {
+                buffer.write(chunk, 0, read);
+                if (buffer.size() > cache.getMaxEntryBytes()) {
+                    // body of unknown length turned out to be too large, hand it on unbuffered
+                    return new PrefixedHttpResponse(response, buffer.toByteArray());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // the caller never gets the response, so it has to be released here
+            response.abort();
+            throw e;
+        }
+        BufferedHttpResponse bufferedResponse = new BufferedHttpResponse(response.getStatusCode(), response.getHeaders(), buffer.toByteArray());
+        response.close();
+        CachedResponse cachedResponse = CachedResponse.of(bufferedResponse, now, cache.getDefaultTtlMillis());
+        if (cachedResponse != null) {
+            cache.put(key, cachedResponse);
+        } else {
+            cache.remove(key);
+        }
+        return bufferedResponse;
+    }
+
+    public ResponseCache getCache() {
+        return cache;
+    }
+
+    /**
+     * response whose body has partially been read already
+     */
+    private static class PrefixedHttpResponse implements HttpResponse {
+
+        private final HttpResponse response;
+
+        private final InputStream body;
+
+        private PrefixedHttpResponse(HttpResponse response, byte[] prefix) {
+            this.response = response;
+            this.body = new SequenceInputStream(new ByteArrayInputStream(prefix), response.getBody());
+        }
+
+        @Override
+        public int getStatusCode() {
+            return response.getStatusCode();
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return response.getHeader(name);
+        }
+
+        @Override
+        public Map<String, String> getHeaders() {
+            return response.getHeaders();
+        }
+
+        @Override
+        public long getConnectNanos() {
+            return response.getConnectNanos();
+        }
+
+        @Override
+        public long getTimeToFirstByteNanos() {
+            return response.getTimeToFirstByteNanos();
+        }
+
+        @Override
+        public InputStream getBody() {
+            return body;
+        }
+
+        @Override
+        public void close() {
+            response.close();
+        }
+
+        @Override
+        public void abort() {
+            response.abort();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package microservicecommons.interservicecommunication.cache;
+
+import microservicecommons.interservicecommunication.transport.HttpRequest;
+import microservicecommons.interservicecommunication.transport.RequestBody;
+import org.apache.commons.io.output.NullOutputStream;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * identifies requests that can be answered by the same response: same method, url, body and values of the relevant headers
+ */
+public final class RequestKey {
+
+    private final String method;
+
+    private final String url;
+
+    private final Map<String,String> headers;
+
+    private final String bodyHash;
+
+    private final int hashCode;
+
+    private RequestKey(String method, String url, Map<String, String> headers, String bodyHash) {
+        this.method = method;
+        this.url = url;
+        this.headers = headers;
+        this.bodyHash = bodyHash;
+        this.hashCode = ((method.hashCode() * 31 + url.hashCode()) * 31 + headers.hashCode()) * 31 + (bodyHash != null ? bodyHash.hashCode() : 0);
+    }
+
+    /**
+     * @param relevantHeaders names of the request headers whose values distinguish responses, e.g. Accept or Authorization
+     */
+    public static RequestKey of(HttpRequest request, Collection<String> relevantHeaders) {
+        Map<String,String> keyHeaders = new TreeMap<>();
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            for (String relevantHeader : relevantHeaders) {
+                if (relevantHeader.equalsIgnoreCase(header.getKey())) {
+                    keyHeaders.put(relevantHeader.toLowerCase(), header.getValue());
+                }
+            }
+        }
+        return new RequestKey(request.getMethod(), request.getUrl().toString(), keyHeaders, hash(request.getBody()));
+    }
+
+    /**
+     * like of(request, allHeaderNames), but with SHA-256 hashes of the header values, for keys that are written to a
+     * file and must not contain credentials, while requests with different credentials still get different keys
+     */
+    public static RequestKey withHashedHeaders(HttpRequest request) {
+        Map<String,String> keyHeaders = new TreeMap<>();
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            MessageDigest digest = sha256();
+            digest.update(String.valueOf(header.getValue()).getBytes(StandardCharsets.UTF_8));
+            keyHeaders.put(header.getKey().toLowerCase(), Base64.getEncoder().encodeToString(digest.digest()));
+        }
+        return new RequestKey(request.getMethod(), request.getUrl().toString(), keyHeaders, hash(request.getBody()));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by this JVM", e);
+        }
+    }
+
+    private static String hash(RequestBody body) {
+        if (body == null || body.getContentLength() == 0) {
+            return null;
+        }
+        if (!body.isRepeatable()) {
+            // a stream can only be read once, so the request never equals another one
+            return "stream@" + System.identityHashCode(body);
+        }
+        try {
+            MessageDigest digest = sha256();
+            try (DigestOutputStream outputStream = new DigestOutputStream(new NullOutputStream(), digest)) {
+                body.writeTo(outputStream);
+            }
+            return Base64.getEncoder().encodeToString(digest.digest());
+        } catch (IOException e) {
+            throw new IllegalStateException("could not hash request body", e);
+        }
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RequestKey)) {
+            return false;
+        }
+        RequestKey other = (RequestKey) o;
+        return hashCode == other.hashCode
+                && method.equals(other.method)
+                && url.equals(other.url)
+                && headers.equals(other.headers)
+                && (bodyHash != null ? bodyHash.equals(other.bodyHash) : other.bodyHash == null);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + url + (headers.isEmpty() ? "" : " " + headers) + (bodyHash != null ? " body " + bodyHash : "");
+    }
+}
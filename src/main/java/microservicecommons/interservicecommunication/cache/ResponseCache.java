@@ -0,0 +1,137 @@
+package microservicecommons.interservicecommunication.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * process-wide LRU cache of buffered responses, used by the CachingHttpTransport.
+ * Unlike the hystrix request cache (UrlJsonQueryCommand's cachingEnabled), it works across requests and without an
+ * initialized HystrixRequestContext. Entries are evicted when maxEntries is exceeded, expired entries are kept as long
+ * as they can be revalidated with a conditional request.
+ */
+public class ResponseCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+    public static final long DEFAULT_TTL_MILLIS = 60000;
+    public static final int DEFAULT_MAX_ENTRY_BYTES = 1024 * 1024;
+
+    private final int maxEntries;
+    private final long defaultTtlMillis;
+    private final int maxEntryBytes;
+    private final Map<RequestKey, CachedResponse> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ResponseCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS, DEFAULT_MAX_ENTRY_BYTES);
+    }
+
+    /**
+     * @param aMaxEntries maximum amount of cached responses, the least recently used are evicted first
+     * @param aDefaultTtlMillis time to live for responses without Cache-Control or Expires header
+     * @param aMaxEntryBytes responses with a larger body are not cached
+     */
+    public ResponseCache(int aMaxEntries, long aDefaultTtlMillis, int aMaxEntryBytes) {
+        maxEntries = aMaxEntries;
+        defaultTtlMillis = aDefaultTtlMillis;
+        maxEntryBytes = aMaxEntryBytes;
+        entries = new LinkedHashMap<RequestKey, CachedResponse>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<RequestKey, CachedResponse> eldest) {
+                if (size() > maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return the cached entry, which may be expired, or null
+     */
+    public CachedResponse get(RequestKey key) {
+        synchronized (entries) {
+            CachedResponse cachedResponse = entries.get(key);
+            if (cachedResponse != null && !cachedResponse.isFresh(System.currentTimeMillis()) && !cachedResponse.hasValidator()) {
+                entries.remove(key);
+                evictions.increment();
+                return null;
+            }
+            return cachedResponse;
+        }
+    }
+
+    public void put(RequestKey key, CachedResponse cachedResponse) {
+        synchronized (entries) {
+            entries.put(key, cachedResponse);
+        }
+    }
+
+    public void remove(RequestKey key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    void recordHit() {
+        hits.increment();
+    }
+
+    void recordMiss() {
+        misses.increment();
+    }
+
+    void recordRevalidation() {
+        revalidations.increment();
+    }
+
+    public long getDefaultTtlMillis() {
+        return defaultTtlMillis;
+    }
+
+    public int getMaxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    /**
+     * @return requests answered from the cache without contacting the server
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return requests that had to be fetched from the server completely
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return requests answered from the cache after the server confirmed them with 304 Not Modified
+     */
+    public long getRevalidations() {
+        return revalidations.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+}
@@ -0,0 +1,102 @@
+package microservicecommons.interservicecommunication.coalescing;
+
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * deduplicates concurrent identical calls (single flight): while a call for a key is running, further callers with the
+ * same key wait for it and get its result or exception instead of executing the call themselves.
+ * Works across threads and does not need a HystrixRequestContext.
+ */
+public class InFlightRequests {
+
+    private static final InFlightRequests DEFAULT = new InFlightRequests();
+
+    /**
+     * outcome of a call that was interrupted, the waiting callers execute it again
+     */
+    private static final Object INTERRUPTED = new Object();
+
+    private final ConcurrentMap<Object, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder executed = new LongAdder();
+
+    private final LongAdder coalesced = new LongAdder();
+
+    public static InFlightRequests getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * executes the call, unless a call with an equal key is already running, in which case its outcome is shared.
+     * An interrupted or cancelled call is no outcome of the call itself, e.g. its command hit its own deadline, so the
+     * waiting callers do not fail with it, one of them executes the call again instead.
+     */
+    @SuppressWarnings("unchecked")
+    public <R> R execute(Object key, Callable<R> call) throws Exception {
+        while (true) {
+            CompletableFuture<Object> own = new CompletableFuture<>();
+            CompletableFuture<Object> running = inFlight.putIfAbsent(key, own);
+            if (running == null) {
+                return executeOwn(key, call, own);
+            }
+            Object outcome;
+            try {
+                outcome = running.get();
+            } catch (ExecutionException e) {
+                coalesced.increment();
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+            if (outcome != INTERRUPTED) {
+                coalesced.increment();
+                return (R) outcome;
+            }
+        }
+    }
+
+    private <R> R executeOwn(Object key, Callable<R> call, CompletableFuture<Object> own) throws Exception {
+        executed.increment();
+        try {
+            R result = call.call();
+            inFlight.remove(key, own);
+            own.complete(result);
+            return result;
+        } catch (Exception | Error e) {
+            // removed first, so the waiting callers do not find this call again when they execute it themselves
+            inFlight.remove(key, own);
+            if (isInterruption(e)) {
+                own.complete(INTERRUPTED);
+            } else {
+                own.completeExceptionally(e);
+            }
+            throw e;
+        }
+    }
+
+    private static boolean isInterruption(Throwable e) {
+        // a SocketTimeoutException is an InterruptedIOException as well, but a real outcome of the call
+        return Thread.currentThread().isInterrupted()
+                || e instanceof InterruptedException
+                || e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException);
+    }
+
+    /**
+     * @return calls that were actually executed
+     */
+    public long getExecuted() {
+        return executed.sum();
+    }
+
+    /**
+     * @return calls that were answered by sharing the outcome of an identical running call
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+}
@@ -1,6 +1,7 @@
 package microservicecommons.interservicecommunication.exception;
 
 import java.io.IOException;
+import java.net.URL;
 
 /**
  * Created by Flo on 09/04/2016.
@@ -10,7 +11,9 @@ public class ApiCommunicationException extends IOException {
 
     public enum ProblemReason {
 
-        CONNECTION_IMPOSSIBLE(true), SERVER_UNABLE(false), SERVER_ERROR(true), CLIENT_MISTAKE(true), UNKNOWN(true);
+        CONNECTION_IMPOSSIBLE(true), SERVER_UNABLE(false), SERVER_ERROR(true), CLIENT_MISTAKE(true), UNKNOWN(true),
+        /** rejected without a request, because the concurrency limit for the downstream service was reached */
+        OVERLOADED(false);
         boolean unexpectedProblem;
 
         ProblemReason(boolean isUnexpectedProblem) {
@@ -20,26 +23,88 @@ public class ApiCommunicationException extends IOException {
         public boolean isUnexpectedProblem() {
             return unexpectedProblem;
         }
+
+        /**
+         * @param statusCode http status code of the failed response, null if there was no response at all
+         * @return the reason for a failed response with the given status code
+         */
+        public static ProblemReason forStatusCode(Integer statusCode) {
+            if (statusCode != null) {
+                switch (statusCode) {
+                    case 501:
+                        return SERVER_UNABLE;
+                    case 400:
+                        return CLIENT_MISTAKE;
+                    case 500:
+                        return SERVER_ERROR;
+                }
+            }
+            // default if reason could not be determined
+            return CONNECTION_IMPOSSIBLE;
+        }
     }
 
     private final ProblemReason problemReason;
 
+    private final Integer statusCode;
+
     public ApiCommunicationException(String message, Exception exception, ProblemReason problemReason) {
+        this(message, exception, problemReason, null);
+    }
+
+    public ApiCommunicationException(String message, Exception exception, ProblemReason problemReason, Integer statusCode) {
         super(message,exception);
         this.problemReason = problemReason;
+        this.statusCode = statusCode;
     }
 
     public ApiCommunicationException(String message, ProblemReason problemReason) {
         super(message);
         this.problemReason = problemReason;
+        this.statusCode = null;
     }
 
     public ApiCommunicationException(String message) {
         super(message);
         this.problemReason = ProblemReason.UNKNOWN;
+        this.statusCode = null;
+    }
+
+    /**
+     * @param errorResponse the body the server sent along with the error status
+     */
+    public static ApiCommunicationException forErrorResponse(URL url, int statusCode, String errorResponse) {
+        String message = "Server returned HTTP response code: "+statusCode+" for URL: "+url;
+        return new ApiCommunicationException(
+                message+". Server returned: "+errorResponse,
+                new IOException(message),
+                ProblemReason.forStatusCode(statusCode),
+                statusCode
+        );
+    }
+
+    /**
+     * for failures where no response was received at all
+     */
+    public static ApiCommunicationException forConnectionProblem(Exception exception) {
+        if (exception instanceof ApiCommunicationException) {
+            return (ApiCommunicationException) exception;
+        }
+        return new ApiCommunicationException(
+                exception.getMessage()+". Server returned: ",
+                exception,
+                ProblemReason.CONNECTION_IMPOSSIBLE
+        );
     }
 
     public ProblemReason getProblemReason() {
         return problemReason;
     }
+
+    /**
+     * @return the http status code of the failed response, null if there was no response
+     */
+    public Integer getStatusCode() {
+        return statusCode;
+    }
 }
@@ -0,0 +1,355 @@
+package microservicecommons.interservicecommunication.fallback;
+
+import microservicecommons.interservicecommunication.json.ObjectMapperRegistry;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * last known good results of commands, served as stale fallback while the service is failing or the circuit is open.
+ * Entries are kept in memory and evicted least recently used first when maxEntries is exceeded. Entries older than
+ * maxStaleMillis are not served anymore.
+ * Optionally the entries are also written as json to a memory-mapped file, so they survive a restart. Writing happens
+ * on a background thread and at most once per persistIntervalMillis for the same key, so the json serialization does
+ * not slow down successful calls. Entries loaded from the file are deserialized on their first use.
+ * The results are shared with later fallbacks, so only use it if the callers do not modify them.
+ */
+public class FallbackStore implements Closeable {
+
+    private static final Logger LOGGER = LogManager.getLogger(FallbackStore.class);
+
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+    public static final long DEFAULT_MAX_STALE_MILLIS = 24 * 60 * 60 * 1000L;
+    public static final long DEFAULT_MIN_REFRESH_INTERVAL_MILLIS = 5000;
+    public static final long DEFAULT_PERSIST_INTERVAL_MILLIS = 60000;
+    public static final int DEFAULT_FILE_SIZE_BYTES = 16 * 1024 * 1024;
+
+    public static final int MAX_REFRESH_THREADS = 4;
+    public static final int MAX_QUEUED_REFRESHES = 100;
+
+    private static final ThreadPoolExecutor REFRESH_EXECUTOR = new ThreadPoolExecutor(MAX_REFRESH_THREADS, MAX_REFRESH_THREADS,
+            60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(MAX_QUEUED_REFRESHES), runnable -> {
+        Thread thread = new Thread(runnable, "fallback-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        REFRESH_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private final int maxEntries;
+    private final long maxStaleMillis;
+    private final long minRefreshIntervalMillis;
+    private final long persistIntervalMillis;
+    private final Map<String, StoredResult> entries;
+    private final MappedFallbackFile file;
+    private final ExecutorService fileWriter;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder failedRefreshes = new LongAdder();
+    private final LongAdder droppedRefreshes = new LongAdder();
+
+    public FallbackStore() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_STALE_MILLIS);
+    }
+
+    /**
+     * in memory only
+     * @param aMaxEntries maximum amount of stored results, the least recently used are evicted first
+     * @param aMaxStaleMillis results older than this are not served anymore
+     */
+    public FallbackStore(int aMaxEntries, long aMaxStaleMillis) {
+        this(aMaxEntries, aMaxStaleMillis, DEFAULT_MIN_REFRESH_INTERVAL_MILLIS, (MappedFallbackFile) null, DEFAULT_PERSIST_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param aMinRefreshIntervalMillis minimum time between two background refreshes of the same key
+     * @param aFile memory-mapped file the entries are written to and loaded from
+     * @param aFileSizeBytes size of the file, when it is full the current entries are written again from its start
+     * @param aPersistIntervalMillis minimum time between writing two results of the same key to the file
+     * @throws IOException if the file can not be opened
+     */
+    public FallbackStore(int aMaxEntries, long aMaxStaleMillis, long aMinRefreshIntervalMillis, Path aFile, int aFileSizeBytes, long aPersistIntervalMillis) throws IOException {
+        this(aMaxEntries, aMaxStaleMillis, aMinRefreshIntervalMillis, new MappedFallbackFile(aFile, aFileSizeBytes), aPersistIntervalMillis);
+        load();
+    }
+
+    private FallbackStore(int aMaxEntries, long aMaxStaleMillis, long aMinRefreshIntervalMillis, MappedFallbackFile aFile, long aPersistIntervalMillis) {
+        maxEntries = aMaxEntries;
+        maxStaleMillis = aMaxStaleMillis;
+        minRefreshIntervalMillis = aMinRefreshIntervalMillis;
+        persistIntervalMillis = aPersistIntervalMillis;
+        entries = new LinkedHashMap<String, StoredResult>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, StoredResult> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        file = aFile;
+        fileWriter = aFile == null ? null : Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fallback-store-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * memory-mapped file with the default sizes and intervals
+     */
+    public static FallbackStore withFile(Path aFile) throws IOException {
+        return new FallbackStore(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_STALE_MILLIS, DEFAULT_MIN_REFRESH_INTERVAL_MILLIS, aFile, DEFAULT_FILE_SIZE_BYTES, DEFAULT_PERSIST_INTERVAL_MILLIS);
+    }
+
+    private void load() {
+        long now = System.currentTimeMillis();
+        file.readAll((key, storedAt, json) -> {
+            if (now - storedAt <= maxStaleMillis) {
+                StoredResult entry = new StoredResult(null, json, storedAt);
+                // it is in the file already
+                entry.persistedAt = now;
+                entries.put(key, entry);
+            }
+        });
+        LOGGER.info("loaded " + entries.size() + " fallback entries");
+    }
+
+    /**
+     * stores the result of a successful call
+     */
+    public void put(String key, Object value) {
+        long now = System.currentTimeMillis();
+        StoredResult entry = new StoredResult(value, null, now);
+        StoredResult previous;
+        synchronized (entries) {
+            previous = entries.put(key, entry);
+        }
+        if (file == null || fileWriter.isShutdown()) {
+            return;
+        }
+        if (previous != null && now - previous.persistedAt < persistIntervalMillis) {
+            entry.persistedAt = previous.persistedAt;
+            return;
+        }
+        entry.persistedAt = now;
+        fileWriter.execute(() -> persist(key, entry));
+    }
+
+    /**
+     * @param type class the result is deserialized to if it was loaded from the file
+     * @return the last known good result, null if there is none or it is older than maxStaleMillis
+     */
+    @SuppressWarnings("unchecked")
+    public <T> StaleValue<T> get(String key, Class<?> type) {
+        StoredResult entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        long age = entry != null ? System.currentTimeMillis() - entry.storedAt : 0;
+        Object value = entry != null && age <= maxStaleMillis ? entry.getValue(type) : null;
+        if (value == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return new StaleValue<>((T) value, entry.storedAt, age);
+    }
+
+    /**
+     * loads a fresh result for the key in the background and stores it. Does nothing if a refresh of the key is running
+     * already, was started less than minRefreshIntervalMillis ago, or there is no entry for the key.
+     * Refreshes of all stores share MAX_REFRESH_THREADS threads, if MAX_QUEUED_REFRESHES are waiting for them already,
+     * the refresh is dropped.
+     * @param loader fetches the result, e.g. by requesting the service again
+     */
+    public void refreshAsync(String key, Callable<?> loader) {
+        StoredResult entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry == null || !entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (now - entry.lastRefreshAt < minRefreshIntervalMillis) {
+            entry.refreshing.set(false);
+            return;
+        }
+        long previousRefreshAt = entry.lastRefreshAt;
+        entry.lastRefreshAt = now;
+        try {
+            REFRESH_EXECUTOR.execute(() -> {
+                try {
+                    Object value = loader.call();
+                    if (value != null) {
+                        put(key, value);
+                    }
+                } catch (Exception e) {
+                    failedRefreshes.increment();
+                    LOGGER.debug("refresh of fallback " + key + " failed: " + e.getMessage());
+                } finally {
+                    entry.refreshing.set(false);
+                }
+            });
+            refreshes.increment();
+        } catch (RejectedExecutionException e) {
+            // the next fallback of the key tries again
+            entry.lastRefreshAt = previousRefreshAt;
+            entry.refreshing.set(false);
+            droppedRefreshes.increment();
+            LOGGER.debug("refresh of fallback " + key + " dropped, all refresh threads are busy.");
+        }
+    }
+
+    private void persist(String key, StoredResult entry) {
+        try {
+            if (!file.append(key, entry.storedAt, entry.toJson())) {
+                compact();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("could not write fallback " + key + " to the file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * the file is full of replaced records, so it is written again with the current entries only
+     */
+    private void compact() {
+        List<Map.Entry<String, StoredResult>> current;
+        synchronized (entries) {
+            current = new ArrayList<>(entries.entrySet());
+        }
+        file.clear();
+        int written = 0;
+        for (Map.Entry<String, StoredResult> entry : current) {
+            try {
+                if (!file.append(entry.getKey(), entry.getValue().storedAt, entry.getValue().toJson())) {
+                    break;
+                }
+                written++;
+            } catch (IOException e) {
+                LOGGER.warn("could not write fallback " + entry.getKey() + " to the file: " + e.getMessage());
+            }
+        }
+        if (written < current.size()) {
+            LOGGER.warn("fallback file is too small, only " + written + " of " + current.size() + " entries are kept across restarts");
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+        if (file != null && !fileWriter.isShutdown()) {
+            fileWriter.execute(file::clear);
+        }
+    }
+
+    /**
+     * @return fallbacks served from the store
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return fallbacks without a stored result
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return background refreshes started
+     */
+    public long getRefreshes() {
+        return refreshes.sum();
+    }
+
+    public long getFailedRefreshes() {
+        return failedRefreshes.sum();
+    }
+
+    /**
+     * @return background refreshes not started, because the refresh threads and their queue were full
+     */
+    public long getDroppedRefreshes() {
+        return droppedRefreshes.sum();
+    }
+
+    /**
+     * waits for pending writes and closes the file, the in-memory entries stay usable
+     */
+    @Override
+    public void close() throws IOException {
+        if (file == null) {
+            return;
+        }
+        fileWriter.shutdown();
+        try {
+            fileWriter.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        file.close();
+    }
+
+    private static class StoredResult {
+
+        private Object value;
+        private byte[] json;
+        private final long storedAt;
+        private volatile long persistedAt;
+        private volatile long lastRefreshAt;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private StoredResult(Object value, byte[] json, long storedAt) {
+            this.value = value;
+            this.json = json;
+            this.storedAt = storedAt;
+        }
+
+        /**
+         * @return the value, deserialized from the file on first use, null if that fails
+         */
+        private synchronized Object getValue(Class<?> type) {
+            if (value == null && json != null) {
+                try {
+                    value = ObjectMapperRegistry.getDefault().getReader(type).readValue(json);
+                    json = null;
+                } catch (IOException e) {
+                    LOGGER.warn("could not read stored fallback as " + type.getName() + ": " + e.getMessage());
+                }
+            }
+            return value;
+        }
+
+        private synchronized byte[] toJson() throws IOException {
+            return json != null ? json : ObjectMapperRegistry.getDefault().getObjectMapper().writeValueAsBytes(value);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package microservicecommons.interservicecommunication.fallback;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * append-only log of fallback entries in a memory-mapped file of fixed size.
+ * Layout: magic and write position as header, then records of key length, key, stored at, value length and value.
+ * A later record replaces an earlier one with the same key. Not thread-safe, the FallbackStore writes from a single
+ * thread only.
+ */
+class MappedFallbackFile implements Closeable {
+
+    private static final int MAGIC = 0x46424c31;
+    private static final int HEADER_BYTES = 8;
+    private static final int RECORD_OVERHEAD = 4 + 8 + 4;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+
+    MappedFallbackFile(Path file, int sizeBytes) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // mapping beyond the end grows the file
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, sizeBytes);
+        int writePosition = buffer.getInt(4);
+        if (buffer.getInt(0) != MAGIC || writePosition < HEADER_BYTES || writePosition > sizeBytes) {
+            clear();
+        }
+    }
+
+    /**
+     * passes all records to the consumer in the order they were written. Reading stops at the first corrupt record.
+     */
+    void readAll(RecordConsumer consumer) {
+        int end = buffer.getInt(4);
+        int position = HEADER_BYTES;
+        while (position + RECORD_OVERHEAD <= end) {
+            int keyLength = buffer.getInt(position);
+            if (keyLength < 0 || position + RECORD_OVERHEAD + keyLength > end) {
+                return;
+            }
+            byte[] key = new byte[keyLength];
+            read(position + 4, key);
+            long storedAt = buffer.getLong(position + 4 + keyLength);
+            int valueLength = buffer.getInt(position + 12 + keyLength);
+            if (valueLength < 0 || position + RECORD_OVERHEAD + keyLength + valueLength > end) {
+                return;
+            }
+            byte[] value = new byte[valueLength];
+            read(position + RECORD_OVERHEAD + keyLength, value);
+            consumer.accept(new String(key, StandardCharsets.UTF_8), storedAt, value);
+            position += RECORD_OVERHEAD + keyLength + valueLength;
+        }
+    }
+
+    /**
+     * @return false if the file has no space left for the record
+     */
+    boolean append(String key, long storedAt, byte[] value) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int position = buffer.getInt(4);
+        int end = position + RECORD_OVERHEAD + keyBytes.length + value.length;
+        if (end > buffer.capacity() || end < 0) {
+            return false;
+        }
+        buffer.putInt(position, keyBytes.length);
+        write(position + 4, keyBytes);
+        buffer.putLong(position + 4 + keyBytes.length, storedAt);
+        buffer.putInt(position + 12 + keyBytes.length, value.length);
+        write(position + RECORD_OVERHEAD + keyBytes.length, value);
+        // the record only becomes visible once it is written completely
+        buffer.putInt(4, end);
+        return true;
+    }
+
+    void clear() {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, HEADER_BYTES);
+    }
+
+    private void read(int position, byte[] target) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(position);
+        view.get(target);
+    }
+
+    private void write(int position, byte[] source) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(position);
+        view.put(source);
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    interface RecordConsumer {
+        void accept(String key, long storedAt, byte[] value);
+    }
+}
@@ -0,0 +1,35 @@
+package microservicecommons.interservicecommunication.fallback;
+
+/**
+ * a last known good result served by the FallbackStore, together with its age.
+ */
+public final class StaleValue<T> {
+
+    private final T value;
+    private final long storedAtMillis;
+    private final long ageMillis;
+
+    StaleValue(T value, long storedAtMillis, long ageMillis) {
+        this.value = value;
+        this.storedAtMillis = storedAtMillis;
+        this.ageMillis = ageMillis;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    /**
+     * @return epoch millis at which the value was received from the service
+     */
+    public long getStoredAtMillis() {
+        return storedAtMillis;
+    }
+
+    /**
+     * @return ms between receiving the value and serving it as fallback
+     */
+    public long getAgeMillis() {
+        return ageMillis;
+    }
+}
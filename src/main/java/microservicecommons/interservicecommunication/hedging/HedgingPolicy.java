@@ -0,0 +1,271 @@
+package microservicecommons.interservicecommunication.hedging;
+
+import microservicecommons.interservicecommunication.model.RetryBudget;
+import microservicecommons.interservicecommunication.transport.HttpRequest;
+import microservicecommons.interservicecommunication.transport.HttpResponse;
+import microservicecommons.interservicecommunication.transport.HttpTransport;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * hedged requests against slow instances: if there is no response after the hedge delay, a second identical request is
+ * sent and whichever successful response comes first is used, the other one is aborted right away.
+ * The first request runs on the calling thread, only hedge requests run on a shared pool of at most MAX_HEDGE_THREADS
+ * threads. If all of them are busy, the request is not hedged.
+ * The delay is either fixed or a percentile of the latencies observed by this policy, so one policy should be shared by
+ * all commands of the same kind. The hedge rate is capped by a token bucket, like the RetryBudget.
+ * Only use it for idempotent requests, UrlJsonQueryCommand applies it to GET and HEAD only.
+ */
+public class HedgingPolicy {
+
+    private static final int LATENCY_WINDOW = 1000;
+    private static final int MIN_SAMPLES = 20;
+    private static final int MAX_SAVED_HEDGES = 10;
+
+    public static final int MAX_HEDGE_THREADS = 32;
+
+    private static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1, daemonThreads("hedge-timer"));
+
+    private static final ExecutorService HEDGE_EXECUTOR = new ThreadPoolExecutor(0, MAX_HEDGE_THREADS, 60, TimeUnit.SECONDS,
+            new SynchronousQueue<>(), daemonThreads("hedged-request"));
+
+    static {
+        // most requests answer before their hedge is due, so cancelled hedges must not pile up in the timer
+        TIMER.setRemoveOnCancelPolicy(true);
+    }
+
+    private final long fixedDelayMillis;
+    private final double percentile;
+    private final long initialDelayMillis;
+    private final RetryBudget hedgeBudget;
+    private final LatencyTracker latencies = new LatencyTracker(LATENCY_WINDOW);
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+
+    private HedgingPolicy(long fixedDelayMillis, double percentile, long initialDelayMillis, double maxHedgeRatio) {
+        this.fixedDelayMillis = fixedDelayMillis;
+        this.percentile = percentile;
+        this.initialDelayMillis = initialDelayMillis;
+        this.hedgeBudget = new RetryBudget(maxHedgeRatio, MAX_SAVED_HEDGES);
+    }
+
+    /**
+     * @param delayMillis time to wait for a response before hedging
+     * @param maxHedgeRatio maximum share of hedged requests, e.g. 0.05 for 5%
+     */
+    public static HedgingPolicy afterDelay(long delayMillis, double maxHedgeRatio) {
+        return new HedgingPolicy(delayMillis, 0, delayMillis, maxHedgeRatio);
+    }
+
+    /**
+     * @param percentile the hedge delay is this percentile of the observed latencies, e.g. 95
+     * @param initialDelayMillis delay until enough latencies have been observed
+     * @param maxHedgeRatio maximum share of hedged requests, e.g. 0.05 for 5%
+     */
+    public static HedgingPolicy afterPercentile(double percentile, long initialDelayMillis, double maxHedgeRatio) {
+        return new HedgingPolicy(-1, percentile, initialDelayMillis, maxHedgeRatio);
+    }
+
+    public long getHedgeDelayMillis() {
+        if (fixedDelayMillis >= 0) {
+            return fixedDelayMillis;
+        }
+        long observed = latencies.getPercentile(percentile, MIN_SAMPLES);
+        return observed >= 0 ? observed : initialDelayMillis;
+    }
+
+    /**
+     * executes the request, hedged if it is slower than the hedge delay and the hedge rate allows it
+     * @return the first successful response, or the response of the first request if both failed
+     */
+    public HttpResponse execute(HttpTransport transport, HttpRequest request) throws IOException, InterruptedException {
+        requests.increment();
+        hedgeBudget.recordRequest();
+        HedgedRequest hedgedRequest = new HedgedRequest(transport, request);
+        ScheduledFuture<?> hedgeTrigger = TIMER.schedule(hedgedRequest::startHedge, getHedgeDelayMillis(), TimeUnit.MILLISECONDS);
+        try {
+            return hedgedRequest.execute();
+        } finally {
+            hedgeTrigger.cancel(false);
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * a request and its hedge. Each one aborts the other in flight as soon as it has a successful response, responses
+     * that are not used are aborted by the calling thread.
+     */
+    private class HedgedRequest {
+
+        private final HttpTransport transport;
+        private final HttpRequest request;
+        private final CompletableFuture<Void> primaryAbort = new CompletableFuture<>();
+        private final CompletableFuture<Void> hedgeAbort = new CompletableFuture<>();
+
+        private CompletableFuture<HttpResponse> hedge;
+        private boolean primaryDone;
+        private boolean primaryWon;
+        private boolean hedgeWon;
+
+        private HedgedRequest(HttpTransport aTransport, HttpRequest aRequest) {
+            transport = aTransport;
+            request = aRequest;
+        }
+
+        /**
+         * runs on the timer thread once the hedge delay passed
+         */
+        private void startHedge() {
+            CompletableFuture<HttpResponse> startedHedge = new CompletableFuture<>();
+            synchronized (this) {
+                if (primaryDone || !hedgeBudget.tryAcquireRetry()) {
+                    return;
+                }
+                hedge = startedHedge;
+            }
+            try {
+                HEDGE_EXECUTOR.execute(() -> runHedge(startedHedge));
+                hedges.increment();
+            } catch (RejectedExecutionException e) {
+                // all hedge threads are busy, the first request is awaited alone
+                startedHedge.completeExceptionally(e);
+            }
+        }
+
+        private void runHedge(CompletableFuture<HttpResponse> startedHedge) {
+            long start = System.nanoTime();
+            try {
+                HttpResponse response = transport.execute(request.withAbortSignal(hedgeAbort));
+                if (response.isSuccessful()) {
+                    latencies.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    boolean won;
+                    synchronized (this) {
+                        won = !primaryWon;
+                        hedgeWon = won;
+                    }
+                    if (won) {
+                        primaryAbort.complete(null);
+                    }
+                }
+                startedHedge.complete(response);
+            } catch (IOException | RuntimeException e) {
+                startedHedge.completeExceptionally(e);
+            }
+        }
+
+        private HttpResponse execute() throws IOException, InterruptedException {
+            long start = System.nanoTime();
+            HttpResponse primary = null;
+            Exception primaryFailure = null;
+            try {
+                primary = transport.execute(request.withAbortSignal(primaryAbort));
+                if (primary.isSuccessful()) {
+                    latencies.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                }
+            } catch (IOException | RuntimeException e) {
+                primaryFailure = e;
+            }
+            CompletableFuture<HttpResponse> startedHedge;
+            synchronized (this) {
+                primaryDone = true;
+                primaryWon = primary != null && primary.isSuccessful() && !hedgeWon;
+                startedHedge = hedge;
+            }
+
+            HttpResponse used = null;
+            try {
+                if (startedHedge != null && !primaryWon) {
+                    // the hedge already answered or is still the only chance for a successful response
+                    try {
+                        HttpResponse hedgeResponse = awaitHedge(startedHedge);
+                        if (hedgeResponse.isSuccessful()) {
+                            hedgeWins.increment();
+                            used = hedgeResponse;
+                            return used;
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        // both failed, the failure of the first request is reported
+                    }
+                }
+                if (primaryFailure instanceof IOException) {
+                    throw (IOException) primaryFailure;
+                }
+                if (primaryFailure != null) {
+                    throw (RuntimeException) primaryFailure;
+                }
+                used = primary;
+                return used;
+            } finally {
+                HttpResponse usedResponse = used;
+                hedgeAbort.complete(null);
+                if (primary != null && primary != usedResponse) {
+                    primary.abort();
+                }
+                if (startedHedge != null) {
+                    startedHedge.thenAccept(response -> {
+                        if (response != usedResponse) {
+                            response.abort();
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+    private static HttpResponse awaitHedge(CompletableFuture<HttpResponse> hedge) throws IOException, InterruptedException {
+        try {
+            return hedge.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException ? e.getCause().getCause() : e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * @return requests executed with this policy
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * @return requests for which a hedge request was sent
+     */
+    public long getHedges() {
+        return hedges.sum();
+    }
+
+    /**
+     * @return hedge requests that answered before the original request
+     */
+    public long getHedgeWins() {
+        return hedgeWins.sum();
+    }
+}
@@ -0,0 +1,50 @@
+package microservicecommons.interservicecommunication.hedging;
+
+import java.util.Arrays;
+
+/**
+ * keeps the most recent latencies and calculates percentiles over them.
+ * Percentiles are only recalculated after a tenth of the window has been replaced, so reading them is cheap.
+ */
+class LatencyTracker {
+
+    private final long[] window;
+
+    private int next;
+
+    private int size;
+
+    private int recordedSinceCalculation;
+
+    private double cachedPercentile = -1;
+
+    private long cachedValue = -1;
+
+    LatencyTracker(int aWindowSize) {
+        window = new long[aWindowSize];
+    }
+
+    synchronized void record(long latencyMillis) {
+        window[next] = latencyMillis;
+        next = (next + 1) % window.length;
+        size = Math.min(size + 1, window.length);
+        recordedSinceCalculation++;
+    }
+
+    /**
+     * @return the percentile of the recorded latencies, or -1 if there are less than minSamples
+     */
+    synchronized long getPercentile(double percentile, int minSamples) {
+        if (size < minSamples) {
+            return -1;
+        }
+        if (percentile != cachedPercentile || recordedSinceCalculation >= Math.max(1, window.length / 10)) {
+            long[] sorted = Arrays.copyOf(window, size);
+            Arrays.sort(sorted);
+            cachedValue = sorted[Math.max(0, Math.min(size - 1, (int) Math.ceil(percentile / 100 * size) - 1))];
+            cachedPercentile = percentile;
+            recordedSinceCalculation = 0;
+        }
+        return cachedValue;
+    }
+}
@@ -0,0 +1,92 @@
+package microservicecommons.interservicecommunication.json;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * process-wide registry for the ObjectMapper used to deserialize responses of inter service queries.
+ * Caches one pre-configured ObjectReader per target type, so Jackson's deserializer caches are kept between calls.
+ * Services can plug in their own mapper, e.g. the one of the Dropwizard Environment:
+ * <pre>ObjectMapperRegistry.getDefault().setObjectMapper(environment.getObjectMapper());</pre>
+ * Readers for the binary Smile format use the configuration of the same mapper.
+ */
+public class ObjectMapperRegistry {
+
+    private static final ObjectMapperRegistry DEFAULT = new ObjectMapperRegistry();
+
+    /**
+     * mapper and readers are swapped together, so a reader never outlives the mapper it was created from
+     */
+    private volatile State state;
+
+    public ObjectMapperRegistry() {
+        this(new ObjectMapper());
+    }
+
+    public ObjectMapperRegistry(ObjectMapper aObjectMapper) {
+        state = new State(aObjectMapper);
+    }
+
+    public static ObjectMapperRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * replaces the mapper used for all further readers. The given mapper is not modified, unknown properties are
+     * ignored on reader level.
+     */
+    public void setObjectMapper(ObjectMapper aObjectMapper) {
+        state = new State(aObjectMapper);
+    }
+
+    public ObjectMapper getObjectMapper() {
+        return state.objectMapper;
+    }
+
+    public ObjectReader getReader(Class<?> aType) {
+        State current = state;
+        return current.readers.computeIfAbsent(current.objectMapper.constructType(aType), current::createReader);
+    }
+
+    public ObjectReader getReader(JavaType aType) {
+        State current = state;
+        return current.readers.computeIfAbsent(aType, current::createReader);
+    }
+
+    /**
+     * @return reader for Smile encoded content, configured like the json reader of the type
+     */
+    public ObjectReader getSmileReader(Class<?> aType) {
+        State current = state;
+        return current.smileReaders.computeIfAbsent(current.objectMapper.constructType(aType), current::createSmileReader);
+    }
+
+    private static class State {
+
+        private final ObjectMapper objectMapper;
+
+        private final ConcurrentMap<JavaType, ObjectReader> readers = new ConcurrentHashMap<>();
+
+        private final ConcurrentMap<JavaType, ObjectReader> smileReaders = new ConcurrentHashMap<>();
+
+        private final SmileFactory smileFactory = new SmileFactory();
+
+        private State(ObjectMapper aObjectMapper) {
+            objectMapper = aObjectMapper;
+        }
+
+        private ObjectReader createReader(JavaType type) {
+            return objectMapper.readerFor(type).without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        }
+
+        private ObjectReader createSmileReader(JavaType type) {
+            return createReader(type).with(smileFactory);
+        }
+    }
+}
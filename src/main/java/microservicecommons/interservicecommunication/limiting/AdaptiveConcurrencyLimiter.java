@@ -0,0 +1,185 @@
+package microservicecommons.interservicecommunication.limiting;
+
+import microservicecommons.interservicecommunication.exception.ApiCommunicationException;
+import microservicecommons.interservicecommunication.transport.HttpRequest;
+import microservicecommons.interservicecommunication.transport.HttpResponse;
+import microservicecommons.interservicecommunication.transport.HttpTransport;
+import microservicecommons.interservicecommunication.transport.ReleasingHttpResponse;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * limits the requests in flight to a downstream service, with a limit that adapts to the measured latency instead of
+ * a fixed thread pool or semaphore size. Requests over the limit are rejected right away with ProblemReason.OVERLOADED,
+ * without waiting in a queue.
+ * AIMD raises the limit by one per round trip while all requests succeed and cuts it by 10% on a failure or a response
+ * slower than maxLatencyMillis. GRADIENT compares the short term latency with the long term latency and shrinks the
+ * limit as soon as requests queue up in the downstream service, before it fails.
+ * One limiter should be shared by all commands calling the same service or host.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final Logger LOGGER = LogManager.getLogger(AdaptiveConcurrencyLimiter.class);
+
+    public enum Algorithm {
+        AIMD, GRADIENT
+    }
+
+    public static final int DEFAULT_INITIAL_LIMIT = 20;
+    public static final int DEFAULT_MIN_LIMIT = 1;
+    public static final int DEFAULT_MAX_LIMIT = 200;
+
+    private static final ConcurrentMap<String, AdaptiveConcurrencyLimiter> SHARED_LIMITERS = new ConcurrentHashMap<>();
+
+    private static final double BACKOFF_RATIO = 0.9;
+    private static final double SHORT_LATENCY_WEIGHT = 0.5;
+    private static final double LONG_LATENCY_WEIGHT = 0.01;
+    private static final double LIMIT_SMOOTHING = 0.2;
+
+    private final Algorithm algorithm;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long maxLatencyNanos;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * written under the lock of this limiter, read without it when requests are admitted
+     */
+    private volatile double limit;
+    private double shortLatencyNanos;
+    private double longLatencyNanos;
+
+    public AdaptiveConcurrencyLimiter(Algorithm aAlgorithm) {
+        this(aAlgorithm, DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param aMaxLatencyMillis responses slower than this count as failures, Long.MAX_VALUE to only count real failures
+     */
+    public AdaptiveConcurrencyLimiter(Algorithm aAlgorithm, int aInitialLimit, int aMinLimit, int aMaxLimit, long aMaxLatencyMillis) {
+        algorithm = aAlgorithm;
+        minLimit = aMinLimit;
+        maxLimit = aMaxLimit;
+        maxLatencyNanos = aMaxLatencyMillis == Long.MAX_VALUE ? Long.MAX_VALUE : aMaxLatencyMillis * 1000000;
+        limit = aInitialLimit;
+    }
+
+    /**
+     * @return the gradient limiter shared by all commands of the command group
+     */
+    public static AdaptiveConcurrencyLimiter forCommandGroup(String commandGroup) {
+        return SHARED_LIMITERS.computeIfAbsent("group:" + commandGroup, key -> new AdaptiveConcurrencyLimiter(Algorithm.GRADIENT));
+    }
+
+    /**
+     * @return the gradient limiter shared by all commands calling the host of the url
+     */
+    public static AdaptiveConcurrencyLimiter forHost(URL url) {
+        return SHARED_LIMITERS.computeIfAbsent("host:" + url.getHost() + ":" + (url.getPort() != -1 ? url.getPort() : url.getDefaultPort()),
+                key -> new AdaptiveConcurrencyLimiter(Algorithm.GRADIENT));
+    }
+
+    /**
+     * executes the request if the limit allows it. The request counts as in flight until its response is closed.
+     * @throws ApiCommunicationException with ProblemReason.OVERLOADED if the limit is reached
+     */
+    public HttpResponse execute(HttpTransport transport, HttpRequest request) throws IOException {
+        if (!tryAcquire()) {
+            rejected.increment();
+            throw new ApiCommunicationException("concurrency limit of " + getLimit() + " reached for " + request.getUrl(),
+                    ApiCommunicationException.ProblemReason.OVERLOADED);
+        }
+        long start = System.nanoTime();
+        HttpResponse response;
+        try {
+            response = transport.execute(request);
+        } catch (IOException | RuntimeException e) {
+            release(start, true);
+            throw e;
+        }
+        // client errors and SERVER_UNABLE say nothing about the load of the service
+        boolean failed = response.getStatusCode() >= 500 && response.getStatusCode() != 501;
+        return new ReleasingHttpResponse(response, () -> release(start, failed));
+    }
+
+    private void release(long start, boolean failed) {
+        int concurrent = inFlight.getAndDecrement();
+        update(System.nanoTime() - start, failed, concurrent);
+    }
+
+    private boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @param concurrent requests in flight when this one finished, including itself
+     */
+    private synchronized void update(long latencyNanos, boolean failed, int concurrent) {
+        boolean dropped = failed || latencyNanos > maxLatencyNanos;
+        // the limit is only raised if it was actually used, otherwise it would grow without bounds under low load
+        boolean limitUsed = concurrent * 2 >= limit;
+        double newLimit;
+        if (algorithm == Algorithm.AIMD) {
+            if (dropped) {
+                newLimit = limit * BACKOFF_RATIO;
+            } else if (limitUsed) {
+                newLimit = limit + 1 / limit;
+            } else {
+                return;
+            }
+        } else {
+            if (!failed) {
+                shortLatencyNanos = shortLatencyNanos == 0 ? latencyNanos : shortLatencyNanos + SHORT_LATENCY_WEIGHT * (latencyNanos - shortLatencyNanos);
+                longLatencyNanos = longLatencyNanos == 0 ? latencyNanos : longLatencyNanos + LONG_LATENCY_WEIGHT * (latencyNanos - longLatencyNanos);
+                if (longLatencyNanos > 2 * shortLatencyNanos) {
+                    // the service got faster for good, let the long term latency catch up
+                    longLatencyNanos *= 0.95;
+                }
+            }
+            double gradient = dropped ? 0.5 : Math.max(0.5, Math.min(1.0, longLatencyNanos / shortLatencyNanos));
+            // a queue of sqrt(limit) requests is tolerated, so the limit can grow while the latency is stable
+            newLimit = limit * gradient + Math.sqrt(limit);
+            if (newLimit > limit && !limitUsed) {
+                return;
+            }
+            newLimit = limit * (1 - LIMIT_SMOOTHING) + newLimit * LIMIT_SMOOTHING;
+        }
+        newLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        if ((int) newLimit != (int) limit) {
+            LOGGER.debug("concurrency limit changed from " + (int) limit + " to " + (int) newLimit);
+        }
+        limit = newLimit;
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return requests rejected because the limit was reached
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+}
@@ -0,0 +1,87 @@
+package microservicecommons.interservicecommunication.loadbalancing;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * instances read from a text file with one base url per line, lines starting with # are ignored.
+ * The file is checked for changes at most once per reload interval, so instances can be added or removed at runtime,
+ * e.g. for local testing. If the file can not be read, the last known instances are kept.
+ */
+public class FileServiceInstanceList implements ServiceInstanceList {
+
+    private static final Logger LOGGER = LogManager.getLogger(FileServiceInstanceList.class);
+
+    public static final long DEFAULT_RELOAD_INTERVAL_MILLIS = 5000;
+
+    private final Path file;
+
+    private final long reloadIntervalMillis;
+
+    private volatile List<URL> instances = Collections.emptyList();
+
+    private volatile long lastModified = -1;
+
+    private volatile long nextCheck;
+
+    public FileServiceInstanceList(Path aFile) {
+        this(aFile, DEFAULT_RELOAD_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param aReloadIntervalMillis minimum time between two checks of the file
+     */
+    public FileServiceInstanceList(Path aFile, long aReloadIntervalMillis) {
+        file = aFile;
+        reloadIntervalMillis = aReloadIntervalMillis;
+        reload();
+    }
+
+    @Override
+    public List<URL> getInstances() {
+        if (System.currentTimeMillis() >= nextCheck) {
+            reload();
+        }
+        return instances;
+    }
+
+    private synchronized void reload() {
+        long now = System.currentTimeMillis();
+        if (now < nextCheck) {
+            return;
+        }
+        nextCheck = now + reloadIntervalMillis;
+        try {
+            long modified = Files.getLastModifiedTime(file).toMillis();
+            if (modified == lastModified) {
+                return;
+            }
+            List<URL> urls = new ArrayList<>();
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    urls.add(new URL(line));
+                } catch (MalformedURLException e) {
+                    LOGGER.warn("ignoring invalid instance url " + line + " in " + file);
+                }
+            }
+            instances = Collections.unmodifiableList(urls);
+            lastModified = modified;
+        } catch (IOException e) {
+            LOGGER.warn("could not read instances from " + file + ", keeping the last known ones: " + e.getMessage());
+        }
+    }
+}
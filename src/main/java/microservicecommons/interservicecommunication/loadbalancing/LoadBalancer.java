@@ -0,0 +1,284 @@
+package microservicecommons.interservicecommunication.loadbalancing;
+
+import microservicecommons.interservicecommunication.exception.ApiCommunicationException.ProblemReason;
+import microservicecommons.interservicecommunication.transport.HttpRequest;
+import microservicecommons.interservicecommunication.transport.HttpResponse;
+import microservicecommons.interservicecommunication.transport.HttpTransport;
+import microservicecommons.interservicecommunication.transport.ReleasingHttpResponse;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * client side load balancing over the instances of a replicated service. Requests are sent to a logical url like
+ * http://serviceName/path, its protocol, host and port are replaced by those of the chosen instance for every try, so
+ * retries and hedge requests can go to other instances.
+ * Instances failing with SERVER_ERROR or CONNECTION_IMPOSSIBLE several times in a row are ejected for a while, the
+ * longer the more often they were ejected. At most half of the instances are ejected, if all available instances are
+ * ejected anyway, requests are sent to all of them again.
+ * One load balancer should be shared by all commands calling the same service.
+ */
+public class LoadBalancer {
+
+    private static final Logger LOGGER = LogManager.getLogger(LoadBalancer.class);
+
+    public enum Strategy {
+        /** instances in turn */
+        ROUND_ROBIN,
+        /** the instance with the least requests in flight */
+        LEAST_OUTSTANDING,
+        /** the better of two random instances, rated by requests in flight and average latency, failures count as slow */
+        POWER_OF_TWO_CHOICES
+    }
+
+    public static final int DEFAULT_CONSECUTIVE_FAILURES = 5;
+    public static final long DEFAULT_BASE_EJECTION_MILLIS = 30000;
+
+    private static final Set<ProblemReason> INSTANCE_FAILURES = EnumSet.of(ProblemReason.SERVER_ERROR, ProblemReason.CONNECTION_IMPOSSIBLE);
+    private static final int MAX_EJECTION_MULTIPLIER = 10;
+    private static final double MAX_EJECTED_SHARE = 0.5;
+    /**
+     * weight of a new latency in the moving average
+     */
+    private static final double LATENCY_WEIGHT = 0.2;
+    /**
+     * latency a failure counts as, so failing instances are not preferred for answering fast
+     */
+    private static final long FAILURE_PENALTY_MILLIS = 1000;
+
+    private final String serviceName;
+    private final ServiceInstanceList instanceList;
+    private final Strategy strategy;
+    private final int consecutiveFailuresToEject;
+    private final long baseEjectionMillis;
+
+    private final ConcurrentMap<String, Instance> instancesByUrl = new ConcurrentHashMap<>();
+    private final AtomicInteger nextIndex = new AtomicInteger();
+    private volatile List<URL> knownUrls;
+    private volatile List<Instance> instances = Collections.emptyList();
+
+    public LoadBalancer(String aServiceName, ServiceInstanceList aInstanceList, Strategy aStrategy) {
+        this(aServiceName, aInstanceList, aStrategy, DEFAULT_CONSECUTIVE_FAILURES, DEFAULT_BASE_EJECTION_MILLIS);
+    }
+
+    /**
+     * @param aServiceName logical host name of the service
+     * @param aConsecutiveFailuresToEject failures in a row after which an instance is ejected
+     * @param aBaseEjectionMillis time an instance is ejected for the first time, multiplied by the amount of ejections in a row
+     */
+    public LoadBalancer(String aServiceName, ServiceInstanceList aInstanceList, Strategy aStrategy, int aConsecutiveFailuresToEject, long aBaseEjectionMillis) {
+        serviceName = aServiceName;
+        instanceList = aInstanceList;
+        strategy = aStrategy;
+        consecutiveFailuresToEject = aConsecutiveFailuresToEject;
+        baseEjectionMillis = aBaseEjectionMillis;
+    }
+
+    /**
+     * executes the request against one of the instances
+     * @throws ConnectException if no instance is known
+     */
+    public HttpResponse execute(HttpTransport transport, HttpRequest request) throws IOException {
+        Instance instance = choose(System.currentTimeMillis());
+        instance.outstanding.incrementAndGet();
+        long start = System.nanoTime();
+        HttpResponse response;
+        try {
+            response = transport.execute(request.withUrl(resolve(instance.url, request.getUrl())));
+        } catch (IOException e) {
+            instance.outstanding.decrementAndGet();
+            record(instance, start, ProblemReason.CONNECTION_IMPOSSIBLE);
+            throw e;
+        } catch (RuntimeException e) {
+            instance.outstanding.decrementAndGet();
+            throw e;
+        }
+        int statusCode = response.getStatusCode();
+        // client errors say nothing about the health of the instance
+        ProblemReason problemReason = statusCode >= 500 ? ProblemReason.forStatusCode(statusCode) : null;
+        return new ReleasingHttpResponse(response, () -> {
+            instance.outstanding.decrementAndGet();
+            record(instance, start, problemReason);
+        });
+    }
+
+    private Instance choose(long now) throws ConnectException {
+        List<Instance> current = getCurrentInstances();
+        int size = current.size();
+        if (size == 0) {
+            throw new ConnectException("no instances of service " + serviceName + " known");
+        }
+        int start = Math.floorMod(nextIndex.getAndIncrement(), size);
+        if (strategy == Strategy.POWER_OF_TWO_CHOICES && size > 1) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(size);
+            int second = (first + 1 + random.nextInt(size - 1)) % size;
+            Instance a = current.get(first);
+            Instance b = current.get(second);
+            if (a.isAvailable(now) && b.isAvailable(now)) {
+                return a.getCost() <= b.getCost() ? a : b;
+            } else if (a.isAvailable(now) || b.isAvailable(now)) {
+                return a.isAvailable(now) ? a : b;
+            }
+            // both ejected, fall back to the first available one
+        }
+        Instance chosen = null;
+        for (int i = 0; i < size; i++) {
+            Instance candidate = current.get((start + i) % size);
+            if (!candidate.isAvailable(now)) {
+                continue;
+            }
+            if (strategy != Strategy.LEAST_OUTSTANDING) {
+                return candidate;
+            }
+            if (chosen == null || candidate.outstanding.get() < chosen.outstanding.get()) {
+                chosen = candidate;
+            }
+        }
+        // all ejected, better try one of them than fail for sure
+        return chosen != null ? chosen : current.get(start);
+    }
+
+    /**
+     * keeps the state of instances that are still listed when the instance list changes
+     */
+    private List<Instance> getCurrentInstances() {
+        List<URL> urls = instanceList.getInstances();
+        if (urls != knownUrls) {
+            synchronized (this) {
+                if (urls != knownUrls) {
+                    List<Instance> updated = new ArrayList<>();
+                    for (URL url : urls) {
+                        updated.add(instancesByUrl.computeIfAbsent(url.toString(), key -> new Instance(url)));
+                    }
+                    instancesByUrl.values().retainAll(updated);
+                    instances = Collections.unmodifiableList(updated);
+                    knownUrls = urls;
+                }
+            }
+        }
+        return instances;
+    }
+
+    private void record(Instance instance, long start, ProblemReason problemReason) {
+        if (problemReason == null || !INSTANCE_FAILURES.contains(problemReason)) {
+            instance.recordSuccess(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return;
+        }
+        instance.recordLatency(Math.max(FAILURE_PENALTY_MILLIS, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        if (instance.consecutiveFailures.incrementAndGet() >= consecutiveFailuresToEject) {
+            long now = System.currentTimeMillis();
+            synchronized (this) {
+                if (instance.isAvailable(now) && instance.consecutiveFailures.get() >= consecutiveFailuresToEject && canEject(now)) {
+                    instance.ejections = Math.min(instance.ejections + 1, MAX_EJECTION_MULTIPLIER);
+                    instance.ejectedUntil = now + baseEjectionMillis * instance.ejections;
+                    instance.consecutiveFailures.set(0);
+                    LOGGER.warn("ejecting instance " + instance.url + " of service " + serviceName + " for " + baseEjectionMillis * instance.ejections + "ms after failing with " + problemReason);
+                }
+            }
+        }
+    }
+
+    private boolean canEject(long now) {
+        int ejected = 0;
+        for (Instance instance : instances) {
+            if (!instance.isAvailable(now)) {
+                ejected++;
+            }
+        }
+        return ejected + 1 <= instances.size() * MAX_EJECTED_SHARE;
+    }
+
+    /**
+     * @return the logical url with protocol, host and port of the instance, the path of the instance url is prepended
+     */
+    private static URL resolve(URL instanceUrl, URL logicalUrl) throws MalformedURLException {
+        String basePath = instanceUrl.getPath();
+        if (basePath.endsWith("/")) {
+            basePath = basePath.substring(0, basePath.length() - 1);
+        }
+        return new URL(instanceUrl.getProtocol(), instanceUrl.getHost(), instanceUrl.getPort(), basePath + logicalUrl.getFile());
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    /**
+     * @return instances that are currently ejected
+     */
+    public List<URL> getEjectedInstances() {
+        long now = System.currentTimeMillis();
+        List<URL> ejected = new ArrayList<>();
+        for (Instance instance : getCurrentInstances()) {
+            if (!instance.isAvailable(now)) {
+                ejected.add(instance.url);
+            }
+        }
+        return ejected;
+    }
+
+    /**
+     * @return requests currently waiting for a response per instance url
+     */
+    public Map<String, Integer> getOutstandingRequests() {
+        Map<String, Integer> outstanding = new HashMap<>();
+        for (Instance instance : getCurrentInstances()) {
+            outstanding.put(instance.url.toString(), instance.outstanding.get());
+        }
+        return outstanding;
+    }
+
+    private static class Instance {
+
+        private final URL url;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        /**
+         * moving average, updated without synchronization, so it is approximate under contention
+         */
+        private volatile double averageLatencyMillis;
+        private volatile long ejectedUntil;
+        private volatile int ejections;
+
+        private Instance(URL url) {
+            this.url = url;
+        }
+
+        private boolean isAvailable(long now) {
+            return now >= ejectedUntil;
+        }
+
+        private double getCost() {
+            return (outstanding.get() + 1) * (averageLatencyMillis + 1);
+        }
+
+        private void recordSuccess(long latencyMillis) {
+            consecutiveFailures.set(0);
+            recordLatency(latencyMillis);
+            if (ejections > 0 && isAvailable(System.currentTimeMillis())) {
+                ejections = 0;
+            }
+        }
+
+        private void recordLatency(long latencyMillis) {
+            averageLatencyMillis = averageLatencyMillis == 0 ? latencyMillis : averageLatencyMillis + LATENCY_WEIGHT * (latencyMillis - averageLatencyMillis);
+        }
+    }
+}
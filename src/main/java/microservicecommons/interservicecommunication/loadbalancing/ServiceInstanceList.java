@@ -0,0 +1,17 @@
+package microservicecommons.interservicecommunication.loadbalancing;
+
+import java.net.URL;
+import java.util.List;
+
+/**
+ * source of the instances of a replicated service, e.g. a static list, a file or a service registry
+ */
+public interface ServiceInstanceList {
+
+    /**
+     * called for every request, so it has to be cheap. Implementations should return the same list object as long as
+     * the instances did not change.
+     * @return base urls of the currently known instances, e.g. http://10.0.0.1:8080
+     */
+    List<URL> getInstances();
+}
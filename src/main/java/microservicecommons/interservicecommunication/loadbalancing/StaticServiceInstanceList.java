@@ -0,0 +1,41 @@
+package microservicecommons.interservicecommunication.loadbalancing;
+
+import microservicecommons.interservicecommunication.exception.MicroserviceCommunicationException;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * fixed list of instances, e.g. from the configuration
+ */
+public class StaticServiceInstanceList implements ServiceInstanceList {
+
+    private final List<URL> instances;
+
+    public StaticServiceInstanceList(List<URL> aInstances) {
+        instances = Collections.unmodifiableList(new ArrayList<>(aInstances));
+    }
+
+    /**
+     * @param aInstances base urls like http://10.0.0.1:8080
+     */
+    public StaticServiceInstanceList(String... aInstances) {
+        List<URL> urls = new ArrayList<>();
+        for (String instance : aInstances) {
+            try {
+                urls.add(new URL(instance));
+            } catch (MalformedURLException e) {
+                throw new MicroserviceCommunicationException("invalid instance url " + instance, e);
+            }
+        }
+        instances = Collections.unmodifiableList(urls);
+    }
+
+    @Override
+    public List<URL> getInstances() {
+        return instances;
+    }
+}
@@ -0,0 +1,72 @@
+package microservicecommons.interservicecommunication.metrics;
+
+import microservicecommons.interservicecommunication.exception.ApiCommunicationException.ProblemReason;
+
+/**
+ * receives measurements of the phases of command executions, per command name.
+ * Commands only measure anything if isEnabled() returns true, so the disabled NOOP costs nothing on the hot path.
+ * Implementations have to be thread safe and should not block.
+ */
+public interface CommandMetrics {
+
+    CommandMetrics NOOP = new CommandMetrics() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public void recordConnect(String commandName, long nanos) {
+        }
+
+        @Override
+        public void recordTimeToFirstByte(String commandName, long nanos) {
+        }
+
+        @Override
+        public void recordBodyRead(String commandName, long nanos) {
+        }
+
+        @Override
+        public void recordDeserialization(String commandName, long nanos) {
+        }
+
+        @Override
+        public void recordResponseSize(String commandName, long bytes) {
+        }
+
+        @Override
+        public void recordRetry(String commandName, ProblemReason problemReason, long sleepMillis) {
+        }
+    };
+
+    boolean isEnabled();
+
+    /**
+     * time for establishing the connection, close to 0 for a reused connection
+     */
+    void recordConnect(String commandName, long nanos);
+
+    /**
+     * time from the established connection until the response headers arrived, including sending the request
+     */
+    void recordTimeToFirstByte(String commandName, long nanos);
+
+    /**
+     * time spent waiting for the response body while it was deserialized
+     */
+    void recordBodyRead(String commandName, long nanos);
+
+    /**
+     * time spent deserializing the response body, without waiting for it
+     */
+    void recordDeserialization(String commandName, long nanos);
+
+    void recordResponseSize(String commandName, long bytes);
+
+    /**
+     * @param problemReason the reason of the failed try that is retried
+     * @param sleepMillis the back-off before the retry
+     */
+    void recordRetry(String commandName, ProblemReason problemReason, long sleepMillis);
+}
@@ -0,0 +1,20 @@
+package microservicecommons.interservicecommunication.metrics;
+
+/**
+ * holds the process-wide metrics used by all commands that do not override getCommandMetrics(). Disabled by default.
+ */
+public final class CommandMetricsHolder {
+
+    private static volatile CommandMetrics defaultMetrics = CommandMetrics.NOOP;
+
+    private CommandMetricsHolder() {
+    }
+
+    public static CommandMetrics getDefault() {
+        return defaultMetrics;
+    }
+
+    public static void setDefault(CommandMetrics aMetrics) {
+        defaultMetrics = aMetrics != null ? aMetrics : CommandMetrics.NOOP;
+    }
+}
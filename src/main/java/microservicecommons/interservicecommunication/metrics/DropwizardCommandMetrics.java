@@ -0,0 +1,153 @@
+package microservicecommons.interservicecommunication.metrics;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import microservicecommons.interservicecommunication.cache.ResponseCache;
+import microservicecommons.interservicecommunication.coalescing.InFlightRequests;
+import microservicecommons.interservicecommunication.exception.ApiCommunicationException.ProblemReason;
+import microservicecommons.interservicecommunication.fallback.FallbackStore;
+import microservicecommons.interservicecommunication.limiting.AdaptiveConcurrencyLimiter;
+import microservicecommons.interservicecommunication.transport.UrlConnectionHttpTransport;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CommandMetrics reported to a Dropwizard MetricRegistry, e.g. the one of the Dropwizard environment:
+ * <pre>CommandMetricsHolder.setDefault(new DropwizardCommandMetrics(environment.metrics()));</pre>
+ * Metrics are named prefix.commandName.phase, e.g. interservicecommunication.getUser.connect. The metrics of a command
+ * are created on its first measurement and looked up by command name afterwards.
+ */
+public class DropwizardCommandMetrics implements CommandMetrics {
+
+    public static final String DEFAULT_PREFIX = "interservicecommunication";
+
+    private final MetricRegistry registry;
+
+    private final String prefix;
+
+    private final ConcurrentMap<String, Metrics> metricsByCommand = new ConcurrentHashMap<>();
+
+    public DropwizardCommandMetrics(MetricRegistry aRegistry) {
+        this(aRegistry, DEFAULT_PREFIX);
+    }
+
+    public DropwizardCommandMetrics(MetricRegistry aRegistry, String aPrefix) {
+        registry = aRegistry;
+        prefix = aPrefix;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void recordConnect(String commandName, long nanos) {
+        metrics(commandName).connect.update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordTimeToFirstByte(String commandName, long nanos) {
+        metrics(commandName).timeToFirstByte.update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordBodyRead(String commandName, long nanos) {
+        metrics(commandName).bodyRead.update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordDeserialization(String commandName, long nanos) {
+        metrics(commandName).deserialization.update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordResponseSize(String commandName, long bytes) {
+        metrics(commandName).responseSize.update(bytes);
+    }
+
+    @Override
+    public void recordRetry(String commandName, ProblemReason problemReason, long sleepMillis) {
+        Metrics metrics = metrics(commandName);
+        metrics.retries.get(problemReason).inc();
+        metrics.retrySleep.update(sleepMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * registers gauges for the connections currently used by the transport, over all hosts
+     */
+    public void registerTransport(String name, UrlConnectionHttpTransport transport) {
+        registry.register(MetricRegistry.name(prefix, "transport", name, "activeConnections"),
+                (Gauge<Integer>) () -> transport.getActiveConnections().values().stream().mapToInt(Integer::intValue).sum());
+        registry.register(MetricRegistry.name(prefix, "transport", name, "maxConnectionsPerHost"),
+                (Gauge<Integer>) transport::getMaxConnectionsPerHost);
+    }
+
+    public void registerCache(String name, ResponseCache cache) {
+        registry.register(MetricRegistry.name(prefix, "cache", name, "size"), (Gauge<Integer>) cache::size);
+        registry.register(MetricRegistry.name(prefix, "cache", name, "hits"), (Gauge<Long>) cache::getHits);
+        registry.register(MetricRegistry.name(prefix, "cache", name, "misses"), (Gauge<Long>) cache::getMisses);
+        registry.register(MetricRegistry.name(prefix, "cache", name, "revalidations"), (Gauge<Long>) cache::getRevalidations);
+        registry.register(MetricRegistry.name(prefix, "cache", name, "evictions"), (Gauge<Long>) cache::getEvictions);
+    }
+
+    public void registerInFlightRequests(String name, InFlightRequests inFlightRequests) {
+        registry.register(MetricRegistry.name(prefix, "coalescing", name, "executed"), (Gauge<Long>) inFlightRequests::getExecuted);
+        registry.register(MetricRegistry.name(prefix, "coalescing", name, "coalesced"), (Gauge<Long>) inFlightRequests::getCoalesced);
+    }
+
+    /**
+     * registers gauges for the current limit, the requests in flight and the rejected requests of the limiter
+     */
+    public void registerConcurrencyLimiter(String name, AdaptiveConcurrencyLimiter limiter) {
+        registry.register(MetricRegistry.name(prefix, "limiter", name, "limit"), (Gauge<Integer>) limiter::getLimit);
+        registry.register(MetricRegistry.name(prefix, "limiter", name, "inFlight"), (Gauge<Integer>) limiter::getInFlight);
+        registry.register(MetricRegistry.name(prefix, "limiter", name, "rejected"), (Gauge<Long>) limiter::getRejected);
+    }
+
+    public void registerFallbackStore(String name, FallbackStore fallbackStore) {
+        registry.register(MetricRegistry.name(prefix, "fallback", name, "size"), (Gauge<Integer>) fallbackStore::size);
+        registry.register(MetricRegistry.name(prefix, "fallback", name, "hits"), (Gauge<Long>) fallbackStore::getHits);
+        registry.register(MetricRegistry.name(prefix, "fallback", name, "misses"), (Gauge<Long>) fallbackStore::getMisses);
+        registry.register(MetricRegistry.name(prefix, "fallback", name, "refreshes"), (Gauge<Long>) fallbackStore::getRefreshes);
+        registry.register(MetricRegistry.name(prefix, "fallback", name, "failedRefreshes"), (Gauge<Long>) fallbackStore::getFailedRefreshes);
+    }
+
+    private Metrics metrics(String commandName) {
+        Metrics metrics = metricsByCommand.get(commandName);
+        if (metrics == null) {
+            metrics = metricsByCommand.computeIfAbsent(commandName, Metrics::new);
+        }
+        return metrics;
+    }
+
+    private class Metrics {
+
+        private final Timer connect;
+        private final Timer timeToFirstByte;
+        private final Timer bodyRead;
+        private final Timer deserialization;
+        private final Timer retrySleep;
+        private final Histogram responseSize;
+        private final Map<ProblemReason, Counter> retries = new EnumMap<>(ProblemReason.class);
+
+        private Metrics(String commandName) {
+            connect = registry.timer(MetricRegistry.name(prefix, commandName, "connect"));
+            timeToFirstByte = registry.timer(MetricRegistry.name(prefix, commandName, "timeToFirstByte"));
+            bodyRead = registry.timer(MetricRegistry.name(prefix, commandName, "bodyRead"));
+            deserialization = registry.timer(MetricRegistry.name(prefix, commandName, "deserialization"));
+            retrySleep = registry.timer(MetricRegistry.name(prefix, commandName, "retrySleep"));
+            responseSize = registry.histogram(MetricRegistry.name(prefix, commandName, "responseSize"));
+            for (ProblemReason problemReason : ProblemReason.values()) {
+                retries.put(problemReason, registry.counter(MetricRegistry.name(prefix, commandName, "retries", problemReason.name())));
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package microservicecommons.interservicecommunication.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * counts the bytes read and the time spent waiting for them, so reading and parsing a streamed body can be told apart
+ */
+public class TimedInputStream extends FilterInputStream {
+
+    private long bytesRead;
+
+    private long readNanos;
+
+    public TimedInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        long start = System.nanoTime();
+        int read = super.read();
+        readNanos += System.nanoTime() - start;
+        if (read != -1) {
+            bytesRead++;
+        }
+        return read;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        long start = System.nanoTime();
+        int read = super.read(b, off, len);
+        readNanos += System.nanoTime() - start;
+        if (read > 0) {
+            bytesRead += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long start = System.nanoTime();
+        long skipped = super.skip(n);
+        readNanos += System.nanoTime() - start;
+        bytesRead += skipped;
+        return skipped;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getReadNanos() {
+        return readNanos;
+    }
+}
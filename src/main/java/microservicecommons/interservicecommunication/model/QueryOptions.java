@@ -0,0 +1,119 @@
+package microservicecommons.interservicecommunication.model;
+
+import microservicecommons.interservicecommunication.fallback.FallbackStore;
+import microservicecommons.interservicecommunication.hedging.HedgingPolicy;
+import microservicecommons.interservicecommunication.limiting.AdaptiveConcurrencyLimiter;
+import microservicecommons.interservicecommunication.loadbalancing.LoadBalancer;
+
+/**
+ * optional behaviour of a UrlJsonQueryCommand, all disabled by default.
+ * Immutable, each with-method returns a modified copy, so one instance can be shared by many commands.
+ */
+public class QueryOptions {
+
+    public static final QueryOptions DEFAULT = new QueryOptions(false, null, null, false, null, null);
+
+    private final boolean coalescingEnabled;
+
+    private final HedgingPolicy hedgingPolicy;
+
+    private final LoadBalancer loadBalancer;
+
+    private final boolean smileEnabled;
+
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    private final FallbackStore fallbackStore;
+
+    private QueryOptions(boolean coalescingEnabled, HedgingPolicy hedgingPolicy, LoadBalancer loadBalancer, boolean smileEnabled, AdaptiveConcurrencyLimiter concurrencyLimiter, FallbackStore fallbackStore) {
+        this.coalescingEnabled = coalescingEnabled;
+        this.hedgingPolicy = hedgingPolicy;
+        this.loadBalancer = loadBalancer;
+        this.smileEnabled = smileEnabled;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.fallbackStore = fallbackStore;
+    }
+
+    /**
+     * @param aCoalescingEnabled if true, concurrent identical GET requests share one network call and one deserialized
+     *                           result. Only use it if the result is not modified by the callers.
+     */
+    public QueryOptions withCoalescing(boolean aCoalescingEnabled) {
+        return new QueryOptions(aCoalescingEnabled, hedgingPolicy, loadBalancer, smileEnabled, concurrencyLimiter, fallbackStore);
+    }
+
+    /**
+     * @param aHedgingPolicy policy for hedging GET requests, shared by all commands of the same kind. null disables hedging.
+     */
+    public QueryOptions withHedging(HedgingPolicy aHedgingPolicy) {
+        return new QueryOptions(coalescingEnabled, aHedgingPolicy, loadBalancer, smileEnabled, concurrencyLimiter, fallbackStore);
+    }
+
+    /**
+     * @param aLoadBalancer distributes the requests over the instances of the service, the host of the query url is
+     *                      only a logical name then. null sends all requests to the query url.
+     */
+    public QueryOptions withLoadBalancer(LoadBalancer aLoadBalancer) {
+        return new QueryOptions(coalescingEnabled, hedgingPolicy, aLoadBalancer, smileEnabled, concurrencyLimiter, fallbackStore);
+    }
+
+    /**
+     * @param aSmileEnabled if true, a MicroserviceQueryCommand asks for the binary Smile format and decodes the response
+     *                      according to its Content-Type, services without Smile support answer with json as before
+     */
+    public QueryOptions withSmile(boolean aSmileEnabled) {
+        return new QueryOptions(coalescingEnabled, hedgingPolicy, loadBalancer, aSmileEnabled, concurrencyLimiter, fallbackStore);
+    }
+
+    /**
+     * @param aConcurrencyLimiter limits the concurrent requests of all commands sharing it, e.g.
+     *                            AdaptiveConcurrencyLimiter.forCommandGroup(group). null for no limit besides hystrix.
+     */
+    public QueryOptions withConcurrencyLimiter(AdaptiveConcurrencyLimiter aConcurrencyLimiter) {
+        return new QueryOptions(coalescingEnabled, hedgingPolicy, loadBalancer, smileEnabled, aConcurrencyLimiter, fallbackStore);
+    }
+
+    /**
+     * @param aFallbackStore keeps the last successful result of each request, which is served with its age when the
+     *                       command fails, while it is refreshed in the background. null for no fallback.
+     */
+    public QueryOptions withFallbackStore(FallbackStore aFallbackStore) {
+        return new QueryOptions(coalescingEnabled, hedgingPolicy, loadBalancer, smileEnabled, concurrencyLimiter, aFallbackStore);
+    }
+
+    public boolean isCoalescingEnabled() {
+        return coalescingEnabled;
+    }
+
+    public boolean isSmileEnabled() {
+        return smileEnabled;
+    }
+
+    /**
+     * @return the hedging policy, or null if requests are not hedged
+     */
+    public HedgingPolicy getHedgingPolicy() {
+        return hedgingPolicy;
+    }
+
+    /**
+     * @return the load balancer, or null if requests are sent to the query url directly
+     */
+    public LoadBalancer getLoadBalancer() {
+        return loadBalancer;
+    }
+
+    /**
+     * @return the concurrency limiter, or null if requests are not limited
+     */
+    public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    /**
+     * @return the fallback store, or null if failures are not answered with stale results
+     */
+    public FallbackStore getFallbackStore() {
+        return fallbackStore;
+    }
+}
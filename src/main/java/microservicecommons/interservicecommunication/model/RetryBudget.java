@@ -0,0 +1,64 @@
+package microservicecommons.interservicecommunication.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * token bucket limiting retries to a share of the total traffic, so retries can not multiply the load on a downstream
+ * service that is already failing. Every request deposits retryRatio tokens, every retry takes one token.
+ * The bucket starts full, so a few retries are possible right from the start.
+ */
+public class RetryBudget {
+
+    public static final double DEFAULT_RETRY_RATIO = 0.1;
+    public static final int DEFAULT_MAX_TOKENS = 10;
+
+    private static final ConcurrentMap<String, RetryBudget> COMMAND_GROUP_BUDGETS = new ConcurrentHashMap<>();
+
+    /**
+     * tokens are counted in thousandths, so ratios like 0.1 add up without rounding errors
+     */
+    private static final long TOKEN = 1000;
+
+    private final long depositPerRequest;
+
+    private final long maxTokens;
+
+    private long tokens;
+
+    /**
+     * @param aRetryRatio retries allowed per request, e.g. 0.1 for at most 10% retries
+     * @param aMaxTokens maximum amount of retries that can be saved up in times without failures
+     */
+    public RetryBudget(double aRetryRatio, int aMaxTokens) {
+        depositPerRequest = Math.round(aRetryRatio * TOKEN);
+        maxTokens = aMaxTokens * TOKEN;
+        tokens = maxTokens;
+    }
+
+    /**
+     * @return the budget shared by all commands of the command group, with the default ratio of 10%
+     */
+    public static RetryBudget forCommandGroup(String commandGroup) {
+        return COMMAND_GROUP_BUDGETS.computeIfAbsent(commandGroup, group -> new RetryBudget(DEFAULT_RETRY_RATIO, DEFAULT_MAX_TOKENS));
+    }
+
+    public synchronized void recordRequest() {
+        tokens = Math.min(maxTokens, tokens + depositPerRequest);
+    }
+
+    /**
+     * @return true if the retry is within the budget, it is counted then
+     */
+    public synchronized boolean tryAcquireRetry() {
+        if (tokens >= TOKEN) {
+            tokens -= TOKEN;
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized double getAvailableTokens() {
+        return (double) tokens / TOKEN;
+    }
+}
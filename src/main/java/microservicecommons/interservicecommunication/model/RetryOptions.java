@@ -1,9 +1,14 @@
 package microservicecommons.interservicecommunication.model;
 
+import microservicecommons.interservicecommunication.exception.ApiCommunicationException;
+
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Function;
+import java.util.function.Predicate;
 
 /**
  * Created by flobe on 24/12/2016.
+ * Immutable, the with-methods return a modified copy.
  */
 public class RetryOptions {
 
@@ -11,20 +16,105 @@ public class RetryOptions {
         LINEAR, EXPONENTIAL
     }
 
+    /**
+     * randomization of the retry delays, so retries of many instances do not hit the downstream service at the same time
+     */
+    public enum Jitter {
+        /** exactly the delay of the retry function */
+        NONE,
+        /** random delay between 0 and the delay of the retry function */
+        FULL,
+        /** random delay between the base delay and three times the previous delay, independent of the retry function */
+        DECORRELATED
+    }
+
+    public static final long DEFAULT_BASE_DELAY_MILLIS = 500;
+
+    /**
+     * client mistakes and other 4xx responses would fail again, except for timeouts and rate limiting. Requests
+     * rejected by a concurrency limiter are not retried either, that would only add load
+     */
+    public static final Predicate<ApiCommunicationException> DEFAULT_RETRY_CONDITION = exception ->
+            exception.getProblemReason() != ApiCommunicationException.ProblemReason.CLIENT_MISTAKE
+                    && exception.getProblemReason() != ApiCommunicationException.ProblemReason.OVERLOADED
+                    && (exception.getStatusCode() == null
+                        || exception.getStatusCode() < 400 || exception.getStatusCode() >= 500
+                        || exception.getStatusCode() == 408 || exception.getStatusCode() == 429);
+
     private final Integer maxAmountRetries;
 
     private final RetryFunctionType retryFunctionType;
 
     private final Function<Integer,Void> onEachRetry;
 
+    private final Integer connectTimeout;
+
+    private final Integer readTimeout;
+
+    private final long baseDelayMillis;
+
+    private final long maxDelayMillis;
+
+    private final Jitter jitter;
+
+    private final RetryBudget retryBudget;
+
+    private final Predicate<ApiCommunicationException> retryCondition;
+
     public RetryOptions(Integer maxAmountRetries, RetryFunctionType retryFunctionType) {
         this(maxAmountRetries, retryFunctionType,(Integer retryCount) -> null);
     }
 
     public RetryOptions(Integer maxAmountRetries, RetryFunctionType retryFunctionType, Function<Integer,Void> onEachRetry) {
+        this(maxAmountRetries, retryFunctionType, onEachRetry, null, null, DEFAULT_BASE_DELAY_MILLIS, Long.MAX_VALUE, Jitter.NONE, null, DEFAULT_RETRY_CONDITION);
+    }
+
+    private RetryOptions(Integer maxAmountRetries, RetryFunctionType retryFunctionType, Function<Integer, Void> onEachRetry, Integer connectTimeout, Integer readTimeout,
+                         long baseDelayMillis, long maxDelayMillis, Jitter jitter, RetryBudget retryBudget, Predicate<ApiCommunicationException> retryCondition) {
         this.maxAmountRetries = maxAmountRetries;
         this.retryFunctionType = retryFunctionType;
         this.onEachRetry = onEachRetry;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.jitter = jitter;
+        this.retryBudget = retryBudget;
+        this.retryCondition = retryCondition;
+    }
+
+    /**
+     * timeouts in ms for each single try, null to keep the one of the transport.
+     * The hystrix execution timeout still covers all tries together, so it should be larger than their sum.
+     */
+    public RetryOptions withTimeoutsPerTry(Integer aConnectTimeout, Integer aReadTimeout) {
+        return new RetryOptions(maxAmountRetries, retryFunctionType, onEachRetry, aConnectTimeout, aReadTimeout, baseDelayMillis, maxDelayMillis, jitter, retryBudget, retryCondition);
+    }
+
+    /**
+     * @param aBaseDelayMillis delay of LINEAR retries, first delay of EXPONENTIAL retries (default 500ms)
+     * @param aMaxDelayMillis upper bound for all delays
+     */
+    public RetryOptions withDelays(long aBaseDelayMillis, long aMaxDelayMillis) {
+        return new RetryOptions(maxAmountRetries, retryFunctionType, onEachRetry, connectTimeout, readTimeout, aBaseDelayMillis, aMaxDelayMillis, jitter, retryBudget, retryCondition);
+    }
+
+    public RetryOptions withJitter(Jitter aJitter) {
+        return new RetryOptions(maxAmountRetries, retryFunctionType, onEachRetry, connectTimeout, readTimeout, baseDelayMillis, maxDelayMillis, aJitter, retryBudget, retryCondition);
+    }
+
+    /**
+     * @param aRetryBudget shared by all commands of a command group, see RetryBudget.forCommandGroup
+     */
+    public RetryOptions withRetryBudget(RetryBudget aRetryBudget) {
+        return new RetryOptions(maxAmountRetries, retryFunctionType, onEachRetry, connectTimeout, readTimeout, baseDelayMillis, maxDelayMillis, jitter, aRetryBudget, retryCondition);
+    }
+
+    /**
+     * @param aRetryCondition decides if a failed try is retried, by default all but client mistakes and other 4xx
+     */
+    public RetryOptions withRetryCondition(Predicate<ApiCommunicationException> aRetryCondition) {
+        return new RetryOptions(maxAmountRetries, retryFunctionType, onEachRetry, connectTimeout, readTimeout, baseDelayMillis, maxDelayMillis, jitter, retryBudget, aRetryCondition);
     }
 
     public Integer getMaxAmountRetries() {
@@ -38,4 +128,72 @@ public class RetryOptions {
     public Function<Integer, Void> getOnEachRetry() {
         return onEachRetry;
     }
+
+    public Integer getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public Integer getReadTimeout() {
+        return readTimeout;
+    }
+
+    public long getBaseDelayMillis() {
+        return baseDelayMillis;
+    }
+
+    public long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    public Jitter getJitter() {
+        return jitter;
+    }
+
+    /**
+     * @return the retry budget, or null if retries are not limited by one
+     */
+    public RetryBudget getRetryBudget() {
+        return retryBudget;
+    }
+
+    /**
+     * @return true if the failure is worth another try. Does not check the amount of retries or the budget.
+     */
+    public boolean isRetryable(ApiCommunicationException failure) {
+        return retryCondition.test(failure);
+    }
+
+    /**
+     * @param retryCount number of the upcoming retry, starting with 1
+     * @return time to wait in ms before the given retry
+     */
+    public long getDelayMillis(int retryCount) {
+        return getDelayMillis(retryCount, baseDelayMillis);
+    }
+
+    /**
+     * @param retryCount number of the upcoming retry, starting with 1
+     * @param previousDelayMillis delay before the previous retry, the base delay for the first one
+     * @return time to wait in ms before the given retry
+     */
+    public long getDelayMillis(int retryCount, long previousDelayMillis) {
+        long delay;
+        if(jitter == Jitter.DECORRELATED) {
+            delay = randomBetween(baseDelayMillis, Math.max(baseDelayMillis, previousDelayMillis * 3));
+        } else if(retryFunctionType == RetryFunctionType.EXPONENTIAL){
+            //quadratische Steigerung der Wartezeit, beginnend mit der Basis-Wartezeit
+            delay = new Double((baseDelayMillis/2)*Math.pow(2,retryCount)).longValue();
+        } else { //type LINEAR
+            delay = baseDelayMillis;
+        }
+        delay = Math.min(delay, maxDelayMillis);
+        if(jitter == Jitter.FULL) {
+            delay = randomBetween(0, delay);
+        }
+        return delay;
+    }
+
+    private static long randomBetween(long min, long max) {
+        return min >= max ? min : ThreadLocalRandom.current().nextLong(min, max + 1);
+    }
 }
@@ -0,0 +1,90 @@
+package microservicecommons.interservicecommunication.raw;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * pool of equally sized heap buffers for reading response bodies without allocating a buffer per request.
+ * Heap buffers are used, as the bodies are read from an InputStream into the backing array directly.
+ * At most maxPooled free buffers are kept, buffers that are released when the pool is full, or that were never taken
+ * from it, are left to the garbage collector.
+ */
+public class ByteBufferPool {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_POOLED = 64;
+
+    private static final ByteBufferPool DEFAULT = new ByteBufferPool(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_POOLED);
+
+    private final int bufferSize;
+    private final BlockingQueue<ByteBuffer> free;
+
+    private final LongAdder allocations = new LongAdder();
+    private final LongAdder reuses = new LongAdder();
+
+    /**
+     * @param aBufferSize capacity of each buffer
+     * @param aMaxPooled maximum amount of free buffers kept for reuse
+     */
+    public ByteBufferPool(int aBufferSize, int aMaxPooled) {
+        bufferSize = aBufferSize;
+        free = new ArrayBlockingQueue<>(aMaxPooled);
+    }
+
+    /**
+     * @return the process-wide pool used by the raw commands
+     */
+    public static ByteBufferPool getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @return an empty buffer of bufferSize, which should be released when it is not used anymore
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = free.poll();
+        if (buffer != null) {
+            reuses.increment();
+            return buffer;
+        }
+        allocations.increment();
+        return ByteBuffer.allocate(bufferSize);
+    }
+
+    /**
+     * hands the buffer back for reuse, it must not be used by the caller afterwards
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() == bufferSize && buffer.hasArray()) {
+            buffer.clear();
+            free.offer(buffer);
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return amount of free buffers currently kept for reuse
+     */
+    public int getPooled() {
+        return free.size();
+    }
+
+    /**
+     * @return buffers allocated because the pool was empty
+     */
+    public long getAllocations() {
+        return allocations.sum();
+    }
+
+    /**
+     * @return buffers taken from the pool
+     */
+    public long getReuses() {
+        return reuses.sum();
+    }
+}
@@ -0,0 +1,75 @@
+package microservicecommons.interservicecommunication.raw;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * unparsed body of a response in a buffer that may come from a ByteBufferPool. The buffer is only valid until the body
+ * is closed, which hands it back to the pool.
+ */
+public final class RawBody implements AutoCloseable {
+
+    private final ByteBuffer buffer;
+    private final String contentType;
+    private final ByteBufferPool pool;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * @param aBuffer the body between position 0 and the limit
+     * @param aPool pool the buffer is released to on close, null if it was not taken from a pool
+     */
+    public RawBody(ByteBuffer aBuffer, String aContentType, ByteBufferPool aPool) {
+        buffer = aBuffer;
+        contentType = aContentType;
+        pool = aPool;
+    }
+
+    /**
+     * @return the body, read-only so the pooled buffer is not modified by the caller
+     */
+    public ByteBuffer getBuffer() {
+        return buffer.asReadOnlyBuffer();
+    }
+
+    public int getLength() {
+        return buffer.limit();
+    }
+
+    /**
+     * @return value of the Content-Type header of the response, e.g. to forward it unchanged, may be null
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void writeTo(OutputStream outputStream) throws IOException {
+        if (buffer.hasArray()) {
+            outputStream.write(buffer.array(), buffer.arrayOffset(), buffer.limit());
+        } else {
+            outputStream.write(toByteArray());
+        }
+    }
+
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer view = buffer.duplicate();
+        while (view.hasRemaining()) {
+            channel.write(view);
+        }
+    }
+
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[buffer.limit()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true) && pool != null) {
+            pool.release(buffer);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package microservicecommons.interservicecommunication.smile;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.deser.DefaultDeserializationContext;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import io.dropwizard.Bundle;
+import io.dropwizard.setup.Bootstrap;
+import io.dropwizard.setup.Environment;
+
+/**
+ * lets a Dropwizard service answer MicroserviceQueryCommands with Smile instead of json:
+ * <pre>bootstrap.addBundle(new SmileBundle());</pre>
+ * Resources have to list SmileMediaType.APPLICATION_SMILE next to json in their @Produces, clients that do not ask for
+ * Smile still get json. Smile is written with the configuration and modules of the environment's ObjectMapper, so
+ * both formats contain the same fields.
+ */
+public class SmileBundle implements Bundle {
+
+    @Override
+    public void initialize(Bootstrap<?> bootstrap) {
+    }
+
+    @Override
+    public void run(Environment environment) {
+        environment.jersey().register(new SmileMessageBodyProvider(smileMapperLike(environment.getObjectMapper())));
+    }
+
+    /**
+     * @return a mapper for Smile with the settings, modules and injectable values of the given mapper. Jackson can not
+     * copy a mapper with another JsonFactory, so the parts are taken over one by one.
+     */
+    static ObjectMapper smileMapperLike(ObjectMapper mapper) {
+        DefaultDeserializationContext deserializationContext = (DefaultDeserializationContext) mapper.getDeserializationContext();
+        ObjectMapper smileMapper = new ObjectMapper(new SmileFactory(), null, deserializationContext.with(deserializationContext.getFactory()));
+        smileMapper.setSerializerFactory(mapper.getSerializerFactory());
+        smileMapper.setConfig(mapper.getSerializationConfig());
+        smileMapper.setConfig(mapper.getDeserializationConfig());
+        smileMapper.setInjectableValues(mapper.getInjectableValues());
+        return smileMapper;
+    }
+}
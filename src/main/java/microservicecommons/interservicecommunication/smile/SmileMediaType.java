@@ -0,0 +1,24 @@
+package microservicecommons.interservicecommunication.smile;
+
+/**
+ * media type of the binary Smile encoding of json, as used by Jackson
+ */
+public final class SmileMediaType {
+
+    public static final String APPLICATION_SMILE = "application/x-jackson-smile";
+
+    /**
+     * Accept header preferring Smile, with json as fallback for services that do not support it
+     */
+    public static final String ACCEPT_SMILE_OR_JSON = APPLICATION_SMILE + ", application/json;q=0.9";
+
+    private SmileMediaType() {
+    }
+
+    /**
+     * @param contentType value of a Content-Type header, may be null
+     */
+    public static boolean isSmile(String contentType) {
+        return contentType != null && contentType.regionMatches(true, 0, APPLICATION_SMILE, 0, APPLICATION_SMILE.length());
+    }
+}
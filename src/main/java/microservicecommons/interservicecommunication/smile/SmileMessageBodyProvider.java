@@ -0,0 +1,72 @@
+package microservicecommons.interservicecommunication.smile;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+/**
+ * JAX-RS provider reading and writing entities as Smile, for resources that produce or consume json.
+ * Jersey picks it when a client prefers application/x-jackson-smile in its Accept header, other clients still get json.
+ */
+@Provider
+@Consumes(SmileMediaType.APPLICATION_SMILE)
+@Produces(SmileMediaType.APPLICATION_SMILE)
+public class SmileMessageBodyProvider implements MessageBodyReader<Object>, MessageBodyWriter<Object> {
+
+    private static final MediaType SMILE = MediaType.valueOf(SmileMediaType.APPLICATION_SMILE);
+
+    private final ObjectMapper smileMapper;
+
+    /**
+     * @param aSmileMapper mapper created with a SmileFactory, e.g. Jackson.newObjectMapper(new SmileFactory())
+     */
+    public SmileMessageBodyProvider(ObjectMapper aSmileMapper) {
+        smileMapper = aSmileMapper;
+    }
+
+    @Override
+    public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return SMILE.isCompatible(mediaType);
+    }
+
+    @Override
+    public Object readFrom(Class<Object> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                           MultivaluedMap<String, String> httpHeaders, InputStream entityStream) throws IOException, WebApplicationException {
+        // the container closes the stream
+        return smileMapper.readerFor(smileMapper.constructType(genericType))
+                .without(JsonParser.Feature.AUTO_CLOSE_SOURCE)
+                .readValue(entityStream);
+    }
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return SMILE.isCompatible(mediaType);
+    }
+
+    @Override
+    public long getSize(Object o, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(Object o, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                        MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException, WebApplicationException {
+        smileMapper.writerFor(smileMapper.constructType(genericType))
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .writeValue(entityStream, o);
+    }
+}
@@ -0,0 +1,14 @@
+package microservicecommons.interservicecommunication.transport;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * non-blocking http client used by ObservableUrlJsonQueryCommand.
+ * The returned future completes once the whole response is buffered, without a thread waiting for it in the meantime.
+ * As for HttpTransport, error status codes complete the future normally, only connection failures complete it
+ * exceptionally. Cancelling the future aborts the request.
+ */
+public interface AsyncHttpTransport {
+
+    CompletableFuture<BufferedHttpResponse> executeAsync(HttpRequest request);
+}
@@ -0,0 +1,68 @@
+package microservicecommons.interservicecommunication.transport;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * response whose body has been read into memory completely, so it does not hold any connection
+ */
+public class BufferedHttpResponse implements HttpResponse {
+
+    private final int statusCode;
+
+    private final Map<String,String> headers;
+
+    private final byte[] body;
+
+    /**
+     * @param aHeaders response headers, looked up case insensitive
+     */
+    public BufferedHttpResponse(int aStatusCode, Map<String,String> aHeaders, byte[] aBody) {
+        statusCode = aStatusCode;
+        Map<String,String> caseInsensitiveHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        caseInsensitiveHeaders.putAll(aHeaders);
+        headers = Collections.unmodifiableMap(caseInsensitiveHeaders);
+        body = aBody;
+    }
+
+    @Override
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    @Override
+    public String getHeader(String name) {
+        return headers.get(name);
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @return a new stream on the buffered body, so the body can be read multiple times
+     */
+    @Override
+    public InputStream getBody() {
+        return new ByteArrayInputStream(body);
+    }
+
+    public byte[] getBodyBytes() {
+        return body;
+    }
+
+    @Override
+    public void close() {
+        // nothing to release
+    }
+
+    @Override
+    public String readBodyAsString() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,107 @@
+package microservicecommons.interservicecommunication.transport;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * a single request to be executed by a HttpTransport
+ */
+public class HttpRequest {
+
+    private final URL url;
+
+    private final String method;
+
+    private final Map<String,String> headers;
+
+    private final RequestBody body;
+
+    private final Integer connectTimeout;
+
+    private final Integer readTimeout;
+
+    private final CompletableFuture<Void> abortSignal;
+
+    public HttpRequest(URL url, String method, Map<String, String> headers, RequestBody body) {
+        this(url, method, headers, body, null, null);
+    }
+
+    /**
+     * @param connectTimeout timeout in ms for establishing the connection, null for the default of the transport
+     * @param readTimeout timeout in ms for waiting on data of the response, null for the default of the transport
+     */
+    public HttpRequest(URL url, String method, Map<String, String> headers, RequestBody body, Integer connectTimeout, Integer readTimeout) {
+        this(url, method, headers, body, connectTimeout, readTimeout, null);
+    }
+
+    private HttpRequest(URL url, String method, Map<String, String> headers, RequestBody body, Integer connectTimeout, Integer readTimeout, CompletableFuture<Void> abortSignal) {
+        this.url = url;
+        this.method = method;
+        this.headers = headers != null ? headers : Collections.emptyMap();
+        this.body = body;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.abortSignal = abortSignal;
+    }
+
+    public URL getUrl() {
+        return url;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @return a copy of this request with the given header added
+     */
+    public HttpRequest withHeader(String name, String value) {
+        Map<String,String> newHeaders = new HashMap<>(headers);
+        newHeaders.put(name, value);
+        return new HttpRequest(url, method, newHeaders, body, connectTimeout, readTimeout, abortSignal);
+    }
+
+    /**
+     * @return a copy of this request sent to another url
+     */
+    public HttpRequest withUrl(URL newUrl) {
+        return new HttpRequest(newUrl, method, headers, body, connectTimeout, readTimeout, abortSignal);
+    }
+
+    /**
+     * @return the request body, or null if the request has none
+     */
+    public RequestBody getBody() {
+        return body;
+    }
+
+    public Integer getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public Integer getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * @return a copy of this request that is aborted while it waits for the response once the signal completes, e.g.
+     * when another request already answered. Transports that can not abort a request in flight ignore the signal.
+     */
+    public HttpRequest withAbortSignal(CompletableFuture<Void> newAbortSignal) {
+        return new HttpRequest(url, method, headers, body, connectTimeout, readTimeout, newAbortSignal);
+    }
+
+    /**
+     * @return the abort signal, or null if the request is never aborted in flight
+     */
+    public CompletableFuture<Void> getAbortSignal() {
+        return abortSignal;
+    }
+}
@@ -0,0 +1,71 @@
+package microservicecommons.interservicecommunication.transport;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * response of a HttpTransport. Closing it drains the remaining body, so the underlying connection can be reused.
+ */
+public interface HttpResponse extends Closeable {
+
+    int getStatusCode();
+
+    /**
+     * @return the value of the given response header, or null if it is not set
+     */
+    String getHeader(String name);
+
+    /**
+     * @return all response headers, multiple values of a header joined by comma
+     */
+    Map<String,String> getHeaders();
+
+    /**
+     * @return the response body, for error status codes the error body. Never null.
+     */
+    InputStream getBody();
+
+    /**
+     * drains and releases the response. Never throws, failing to drain just means the connection is not reused.
+     */
+    @Override
+    void close();
+
+    /**
+     * releases the response without reading the rest of the body, e.g. when it is not needed anymore. The connection
+     * is not reused then.
+     */
+    default void abort() {
+        close();
+    }
+
+    /**
+     * @return time in ns for establishing the connection, or -1 if unknown, e.g. for a cached response
+     */
+    default long getConnectNanos() {
+        return -1;
+    }
+
+    /**
+     * @return time in ns from the established connection until the response headers arrived, or -1 if unknown
+     */
+    default long getTimeToFirstByteNanos() {
+        return -1;
+    }
+
+    default boolean isSuccessful() {
+        return getStatusCode() < 400;
+    }
+
+    /**
+     * reads the whole remaining body as UTF-8 text, e.g. for error messages
+     */
+    default String readBodyAsString() throws IOException {
+        return IOUtils.toString(getBody(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,13 @@
+package microservicecommons.interservicecommunication.transport;
+
+import java.io.IOException;
+
+/**
+ * the http client used by UrlJsonQueryCommand and its subclasses.
+ * Implementations return responses with error status codes instead of throwing, only failures of the connection
+ * itself are thrown as IOException. The caller has to close every returned response.
+ */
+public interface HttpTransport {
+
+    HttpResponse execute(HttpRequest request) throws IOException;
+}
@@ -0,0 +1,42 @@
+package microservicecommons.interservicecommunication.transport;
+
+/**
+ * holds the process-wide transports used by all commands that do not override getTransport() / getAsyncTransport()
+ */
+public final class HttpTransports {
+
+    private static volatile HttpTransport defaultTransport = new UrlConnectionHttpTransport();
+
+    /**
+     * created on first use, as it starts its own selector threads
+     */
+    private static volatile AsyncHttpTransport defaultAsyncTransport;
+
+    private HttpTransports() {
+    }
+
+    public static HttpTransport getDefault() {
+        return defaultTransport;
+    }
+
+    public static void setDefault(HttpTransport aTransport) {
+        defaultTransport = aTransport;
+    }
+
+    public static AsyncHttpTransport getDefaultAsync() {
+        AsyncHttpTransport transport = defaultAsyncTransport;
+        if (transport == null) {
+            synchronized (HttpTransports.class) {
+                if (defaultAsyncTransport == null) {
+                    defaultAsyncTransport = new JettyAsyncHttpTransport();
+                }
+                transport = defaultAsyncTransport;
+            }
+        }
+        return transport;
+    }
+
+    public static void setDefaultAsync(AsyncHttpTransport aTransport) {
+        defaultAsyncTransport = aTransport;
+    }
+}
@@ -0,0 +1,124 @@
+package microservicecommons.interservicecommunication.transport;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.eclipse.jetty.client.util.BytesContentProvider;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AsyncHttpTransport based on the non-blocking jetty HttpClient. Connections are pooled and kept alive per destination,
+ * the responses are buffered up to maxResponseSize bytes.
+ * The connect timeout can only be set for the whole client, a connect timeout of single requests is ignored.
+ * All threads of the client are daemon threads. Request bodies are buffered before they are sent. Jetty requests and decodes gzip responses by itself, like
+ * UrlConnectionHttpTransport the Content-Encoding header of a decoded response is hidden.
+ */
+public class JettyAsyncHttpTransport implements AsyncHttpTransport, AutoCloseable {
+
+    public static final int DEFAULT_MAX_RESPONSE_SIZE = 16 * 1024 * 1024;
+
+    private final HttpClient httpClient;
+
+    private final int readTimeout;
+
+    private final int maxResponseSize;
+
+    public JettyAsyncHttpTransport() {
+        this(UrlConnectionHttpTransport.DEFAULT_MAX_CONNECTIONS_PER_HOST, UrlConnectionHttpTransport.DEFAULT_CONNECT_TIMEOUT,
+                UrlConnectionHttpTransport.DEFAULT_READ_TIMEOUT, DEFAULT_MAX_RESPONSE_SIZE);
+    }
+
+    /**
+     * @param aMaxConnectionsPerHost maximum amount of connections to a single host, further requests are queued
+     * @param aConnectTimeout timeout in ms for establishing a connection
+     * @param aReadTimeout timeout in ms for waiting on data of the response
+     * @param aMaxResponseSize maximum size of a response body in bytes, larger responses fail
+     */
+    public JettyAsyncHttpTransport(int aMaxConnectionsPerHost, int aConnectTimeout, int aReadTimeout, int aMaxResponseSize) {
+        readTimeout = aReadTimeout;
+        maxResponseSize = aMaxResponseSize;
+        httpClient = new HttpClient();
+        // daemon threads, so a transport that is never closed, like the process-wide default, does not keep the jvm alive
+        QueuedThreadPool threadPool = new QueuedThreadPool();
+        threadPool.setName("jetty-async-transport");
+        threadPool.setDaemon(true);
+        httpClient.setExecutor(threadPool);
+        httpClient.setScheduler(new ScheduledExecutorScheduler("jetty-async-transport-scheduler", true));
+        httpClient.setMaxConnectionsPerDestination(aMaxConnectionsPerHost);
+        httpClient.setConnectTimeout(aConnectTimeout);
+        try {
+            httpClient.start();
+        } catch (Exception e) {
+            throw new IllegalStateException("could not start jetty http client", e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<BufferedHttpResponse> executeAsync(HttpRequest request) {
+        CompletableFuture<BufferedHttpResponse> future = new CompletableFuture<>();
+        Request jettyRequest;
+        try {
+            jettyRequest = httpClient.newRequest(request.getUrl().toURI())
+                    .method(request.getMethod())
+                    .idleTimeout(request.getReadTimeout() != null ? request.getReadTimeout() : readTimeout, TimeUnit.MILLISECONDS);
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            jettyRequest.header(header.getKey(), header.getValue());
+        }
+        RequestBody body = request.getBody();
+        if (body != null) {
+            try {
+                jettyRequest.content(new BytesContentProvider(RequestBodies.toBytes(body)), body.getContentType());
+            } catch (IOException e) {
+                future.completeExceptionally(e);
+                return future;
+            }
+            if (body.getContentEncoding() != null) {
+                jettyRequest.header("Content-Encoding", body.getContentEncoding());
+            }
+        }
+        jettyRequest.send(new BufferingResponseListener(maxResponseSize) {
+            @Override
+            public void onComplete(Result result) {
+                if (result.isFailed()) {
+                    future.completeExceptionally(result.getFailure());
+                } else {
+                    Map<String, String> headers = new HashMap<>();
+                    for (HttpField field : result.getResponse().getHeaders()) {
+                        if (field.getHeader() == HttpHeader.CONTENT_ENCODING && "gzip".equalsIgnoreCase(field.getValue())) {
+                            continue;
+                        }
+                        headers.merge(field.getName(), field.getValue(), (first, second) -> first + ", " + second);
+                    }
+                    future.complete(new BufferedHttpResponse(result.getResponse().getStatus(), headers, getContent()));
+                }
+            }
+        });
+        future.whenComplete((response, failure) -> {
+            if (failure instanceof CancellationException) {
+                jettyRequest.abort(failure);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public void close() throws Exception {
+        httpClient.stop();
+    }
+}
@@ -0,0 +1,77 @@
+package microservicecommons.interservicecommunication.transport;
+
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * response that runs an action once it is closed or aborted, e.g. to give back a permit that was taken for the
+ * request. The request is only finished when the body has been read, not when the headers arrived.
+ */
+public class ReleasingHttpResponse implements HttpResponse {
+
+    private final HttpResponse response;
+
+    private final Runnable onRelease;
+
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    public ReleasingHttpResponse(HttpResponse aResponse, Runnable aOnRelease) {
+        response = aResponse;
+        onRelease = aOnRelease;
+    }
+
+    @Override
+    public int getStatusCode() {
+        return response.getStatusCode();
+    }
+
+    @Override
+    public String getHeader(String name) {
+        return response.getHeader(name);
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+        return response.getHeaders();
+    }
+
+    @Override
+    public InputStream getBody() {
+        return response.getBody();
+    }
+
+    @Override
+    public long getConnectNanos() {
+        return response.getConnectNanos();
+    }
+
+    @Override
+    public long getTimeToFirstByteNanos() {
+        return response.getTimeToFirstByteNanos();
+    }
+
+    @Override
+    public void close() {
+        try {
+            response.close();
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public void abort() {
+        try {
+            response.abort();
+        } finally {
+            release();
+        }
+    }
+
+    private void release() {
+        if (released.compareAndSet(false, true)) {
+            onRelease.run();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package microservicecommons.interservicecommunication.transport;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import microservicecommons.interservicecommunication.json.ObjectMapperRegistry;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * factories for the common kinds of request bodies
+ */
+public final class RequestBodies {
+
+    private static final String JSON = "application/json";
+
+    private RequestBodies() {
+    }
+
+    public static RequestBody ofBytes(byte[] body, String contentType) {
+        return new BytesRequestBody(body, contentType);
+    }
+
+    public static RequestBody ofString(String body, String contentType) {
+        return new BytesRequestBody(body.getBytes(StandardCharsets.UTF_8), contentType);
+    }
+
+    /**
+     * @param body object serialized to json while it is sent, without building the whole json in memory first
+     */
+    public static RequestBody ofJson(Object body) {
+        return new JsonRequestBody(body, ObjectMapperRegistry.getDefault().getObjectMapper().writer());
+    }
+
+    /**
+     * @param body sent chunked while it is read, so it can only be sent once and the request is not retried.
+     *             It is closed after it has been sent.
+     */
+    public static RequestBody ofStream(InputStream body, String contentType) {
+        return new StreamRequestBody(body, contentType);
+    }
+
+    /**
+     * @return the body compressed with gzip while it is sent, with the Content-Encoding set accordingly. Only use it if
+     * the server can decode gzip request bodies.
+     */
+    public static RequestBody gzip(RequestBody body) {
+        return new GzipRequestBody(body);
+    }
+
+    /**
+     * @return the whole body in memory, for transports that can not stream it
+     */
+    public static byte[] toBytes(RequestBody body) throws IOException {
+        if (body instanceof BytesRequestBody) {
+            return ((BytesRequestBody) body).body;
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        body.writeTo(buffer);
+        return buffer.toByteArray();
+    }
+
+    private static class BytesRequestBody implements RequestBody {
+
+        private final byte[] body;
+        private final String contentType;
+
+        private BytesRequestBody(byte[] body, String contentType) {
+            this.body = body;
+            this.contentType = contentType;
+        }
+
+        @Override
+        public long getContentLength() {
+            return body.length;
+        }
+
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+
+        @Override
+        public String getContentEncoding() {
+            return null;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public void writeTo(OutputStream outputStream) throws IOException {
+            outputStream.write(body);
+        }
+    }
+
+    private static class JsonRequestBody implements RequestBody {
+
+        private final Object body;
+        private final ObjectWriter writer;
+
+        private JsonRequestBody(Object body, ObjectWriter writer) {
+            this.body = body;
+            this.writer = writer;
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public String getContentType() {
+            return JSON;
+        }
+
+        @Override
+        public String getContentEncoding() {
+            return null;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public void writeTo(OutputStream outputStream) throws IOException {
+            // jackson closes the stream it writes to, the connection has to close it itself
+            writer.writeValue(new CloseShieldOutputStream(outputStream), body);
+        }
+    }
+
+    private static class StreamRequestBody implements RequestBody {
+
+        private final InputStream body;
+        private final String contentType;
+        private final AtomicBoolean written = new AtomicBoolean();
+
+        private StreamRequestBody(InputStream body, String contentType) {
+            this.body = body;
+            this.contentType = contentType;
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+
+        @Override
+        public String getContentEncoding() {
+            return null;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        @Override
+        public void writeTo(OutputStream outputStream) throws IOException {
+            if (written.getAndSet(true)) {
+                throw new IOException("stream request body has already been sent");
+            }
+            try (InputStream inputStream = body) {
+                IOUtils.copy(inputStream, outputStream);
+            }
+        }
+    }
+
+    private static class GzipRequestBody implements RequestBody {
+
+        private final RequestBody body;
+
+        private GzipRequestBody(RequestBody body) {
+            this.body = body;
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public String getContentType() {
+            return body.getContentType();
+        }
+
+        @Override
+        public String getContentEncoding() {
+            return "gzip";
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return body.isRepeatable();
+        }
+
+        @Override
+        public void writeTo(OutputStream outputStream) throws IOException {
+            GZIPOutputStream gzipOutputStream = new GZIPOutputStream(new CloseShieldOutputStream(outputStream), 8192);
+            body.writeTo(gzipOutputStream);
+            // writes the gzip trailer and releases the deflater, without closing the connection's stream
+            gzipOutputStream.close();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package microservicecommons.interservicecommunication.transport;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * body of a HttpRequest, written directly to the connection. Create it with RequestBodies.
+ */
+public interface RequestBody {
+
+    /**
+     * @return length in bytes, or -1 if it is not known in advance, the body is sent chunked then
+     */
+    long getContentLength();
+
+    /**
+     * @return the content type, or null to leave it to the headers of the request
+     */
+    String getContentType();
+
+    /**
+     * @return the content encoding, e.g. gzip, or null if it is not encoded
+     */
+    String getContentEncoding();
+
+    /**
+     * @return true if writeTo can be called more than once, otherwise the request can not be retried
+     */
+    boolean isRepeatable();
+
+    void writeTo(OutputStream outputStream) throws IOException;
+}
@@ -0,0 +1,324 @@
+package microservicecommons.interservicecommunication.transport;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * default HttpTransport based on HttpURLConnection.
+ * The amount of connections per host is bounded, a request waits up to its connect timeout for a free connection, the
+ * rest of the connect timeout is left for connecting.
+ * Idle connections are kept alive in the JDK's keep-alive cache, which is why a closed response is drained if at
+ * most MAX_DRAIN_BYTES of it are left, otherwise it is disconnected. The JDK caches at most http.maxConnections idle
+ * connections per host (default 5), so set that system property to maxConnectionsPerHost at startup, e.g.
+ * -Dhttp.maxConnections=20, for all connections to be reused. The JDK reads it once before the first http connection
+ * is made, so the transport does not change it.
+ * Unless the request sets its own Accept-Encoding, gzip and deflate encoded responses are accepted and decoded while
+ * they are read, the Content-Encoding and Content-Length headers of such responses are hidden.
+ * Request bodies of unknown length are sent chunked.
+ * A request with an abort signal is disconnected when the signal completes while it still waits for the response.
+ */
+public class UrlConnectionHttpTransport implements HttpTransport {
+
+    private static final Logger LOGGER = LogManager.getLogger(UrlConnectionHttpTransport.class);
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+    public static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+    public static final int DEFAULT_READ_TIMEOUT = 20000;
+
+    /**
+     * unread bytes of a closed response that are still drained to keep the connection alive
+     */
+    public static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    private static final String ACCEPTED_ENCODINGS = "gzip, deflate";
+
+    private final int maxConnectionsPerHost;
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final boolean compressionEnabled;
+    private final ConcurrentMap<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+    public UrlConnectionHttpTransport() {
+        this(DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+    }
+
+    /**
+     * @param aMaxConnectionsPerHost maximum amount of concurrently open connections to a single host
+     * @param aConnectTimeout timeout in ms for establishing a connection, also for waiting for a free connection
+     * @param aReadTimeout timeout in ms for waiting on data of the response
+     */
+    public UrlConnectionHttpTransport(int aMaxConnectionsPerHost, int aConnectTimeout, int aReadTimeout) {
+        this(aMaxConnectionsPerHost, aConnectTimeout, aReadTimeout, true);
+    }
+
+    /**
+     * @param aCompressionEnabled if true, compressed responses are requested and decoded
+     */
+    public UrlConnectionHttpTransport(int aMaxConnectionsPerHost, int aConnectTimeout, int aReadTimeout, boolean aCompressionEnabled) {
+        maxConnectionsPerHost = aMaxConnectionsPerHost;
+        connectTimeout = aConnectTimeout;
+        readTimeout = aReadTimeout;
+        compressionEnabled = aCompressionEnabled;
+    }
+
+    @Override
+    public HttpResponse execute(HttpRequest request) throws IOException {
+        URL url = request.getUrl();
+        Semaphore permits = hostPermits.computeIfAbsent(url.getHost() + ":" + (url.getPort() != -1 ? url.getPort() : url.getDefaultPort()), host -> new Semaphore(maxConnectionsPerHost));
+        // waiting for a free connection and connecting share the connect timeout, so a per-try timeout is never exceeded
+        int requestConnectTimeout = request.getConnectTimeout() != null ? request.getConnectTimeout() : connectTimeout;
+        long waitStart = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(requestConnectTimeout, TimeUnit.MILLISECONDS)) {
+                throw new ConnectException("no free connection to " + url.getHost() + " within " + requestConnectTimeout + "ms, connection pool exhausted");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectException("interrupted while waiting for a free connection to " + url.getHost());
+        }
+
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) url.openConnection();
+            long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - waitStart);
+            // 0 would mean no timeout at all
+            connection.setConnectTimeout((int) Math.max(1, requestConnectTimeout - waitedMillis));
+            connection.setReadTimeout(request.getReadTimeout() != null ? request.getReadTimeout() : readTimeout);
+            connection.setRequestMethod(request.getMethod());
+            if (compressionEnabled) {
+                connection.setRequestProperty("Accept-Encoding", ACCEPTED_ENCODINGS);
+            }
+            for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+            RequestBody body = request.getBody();
+            if (body != null) {
+                connection.setDoOutput(true);
+                if (body.getContentLength() >= 0) {
+                    connection.setFixedLengthStreamingMode(body.getContentLength());
+                } else {
+                    connection.setChunkedStreamingMode(0);
+                }
+                if (body.getContentType() != null && connection.getRequestProperty("Content-Type") == null) {
+                    connection.setRequestProperty("Content-Type", body.getContentType());
+                }
+                if (body.getContentEncoding() != null) {
+                    connection.setRequestProperty("Content-Encoding", body.getContentEncoding());
+                }
+            }
+            // an abort signal disconnects the connection until the response arrives, afterwards the response is aborted
+            AtomicBoolean waiting = new AtomicBoolean(true);
+            if (request.getAbortSignal() != null) {
+                HttpURLConnection abortedConnection = connection;
+                request.getAbortSignal().thenRun(() -> {
+                    if (waiting.compareAndSet(true, false)) {
+                        abortedConnection.disconnect();
+                    }
+                });
+            }
+            if (!waiting.get()) {
+                throw new IOException("request to " + url + " was aborted");
+            }
+            long start = System.nanoTime();
+            connection.connect();
+            long connected = System.nanoTime();
+            if (body != null) {
+                try (OutputStream outputStream = connection.getOutputStream()) {
+                    body.writeTo(outputStream);
+                }
+            }
+            int statusCode = connection.getResponseCode();
+            if (!waiting.compareAndSet(true, false)) {
+                throw new IOException("request to " + url + " was aborted");
+            }
+            long firstByte = System.nanoTime();
+            InputStream responseBody = statusCode < 400 ? connection.getInputStream() : connection.getErrorStream();
+            if (responseBody == null) {
+                responseBody = new ByteArrayInputStream(new byte[0]);
+            }
+            return new UrlConnectionHttpResponse(connection, statusCode, responseBody, decode(connection, responseBody), permits,
+                    connected - start, firstByte - connected);
+        } catch (IOException | RuntimeException e) {
+            if (connection != null) {
+                connection.disconnect();
+            }
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the body decoded according to the Content-Encoding, the body itself if it is not encoded
+     */
+    private static InputStream decode(HttpURLConnection connection, InputStream body) throws IOException {
+        String encoding = connection.getContentEncoding();
+        if (encoding == null || connection.getContentLengthLong() == 0) {
+            return body;
+        }
+        switch (encoding.trim().toLowerCase()) {
+            case "gzip":
+            case "x-gzip":
+                // GZIPInputStream reads the gzip header right away, so an empty body can not be wrapped
+                PushbackInputStream pushback = new PushbackInputStream(body, 1);
+                int first = pushback.read();
+                if (first == -1) {
+                    return pushback;
+                }
+                pushback.unread(first);
+                return new GZIPInputStream(pushback, 8192);
+            case "deflate":
+                return new InflaterInputStream(body);
+            default:
+                return body;
+        }
+    }
+
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * @return amount of currently used connections per host, keyed by host:port
+     */
+    public Map<String, Integer> getActiveConnections() {
+        Map<String, Integer> active = new HashMap<>();
+        hostPermits.forEach((host, permits) -> active.put(host, maxConnectionsPerHost - permits.availablePermits()));
+        return active;
+    }
+
+    private static class UrlConnectionHttpResponse implements HttpResponse {
+
+        private final HttpURLConnection connection;
+        private final int statusCode;
+        private final InputStream body;
+        private final InputStream decodedBody;
+        private final Semaphore permits;
+        private final long connectNanos;
+        private final long timeToFirstByteNanos;
+        private boolean closed;
+
+        private UrlConnectionHttpResponse(HttpURLConnection connection, int statusCode, InputStream body, InputStream decodedBody, Semaphore permits, long connectNanos, long timeToFirstByteNanos) {
+            this.connection = connection;
+            this.statusCode = statusCode;
+            this.body = body;
+            this.decodedBody = decodedBody;
+            this.permits = permits;
+            this.connectNanos = connectNanos;
+            this.timeToFirstByteNanos = timeToFirstByteNanos;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        private boolean isDecoded() {
+            return decodedBody != body;
+        }
+
+        /**
+         * the encoding and the encoded length do not apply to the decoded body
+         */
+        private boolean isHidden(String name) {
+            return isDecoded() && ("Content-Encoding".equalsIgnoreCase(name) || "Content-Length".equalsIgnoreCase(name));
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return isHidden(name) ? null : connection.getHeaderField(name);
+        }
+
+        @Override
+        public Map<String, String> getHeaders() {
+            Map<String, String> headers = new HashMap<>();
+            for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+                // the status line is contained with a null key
+                if (header.getKey() != null && !isHidden(header.getKey())) {
+                    headers.put(header.getKey(), String.join(", ", header.getValue()));
+                }
+            }
+            return headers;
+        }
+
+        @Override
+        public long getConnectNanos() {
+            return connectNanos;
+        }
+
+        @Override
+        public long getTimeToFirstByteNanos() {
+            return timeToFirstByteNanos;
+        }
+
+        @Override
+        public InputStream getBody() {
+            // readers like Jackson close the stream before it is drained, the connection is released by close() only
+            return new CloseShieldInputStream(decodedBody);
+        }
+
+        @Override
+        public synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                // the connection only goes back to the keep-alive cache if the body was read completely, reading a
+                // large rest costs more than a new connection though
+                if (IOUtils.skip(body, MAX_DRAIN_BYTES) == MAX_DRAIN_BYTES && body.read() != -1) {
+                    LOGGER.debug("response of " + connection.getURL() + " has more than " + MAX_DRAIN_BYTES + " unread bytes, connection is not reused");
+                    connection.disconnect();
+                }
+                // also releases the inflater of a decoded body
+                decodedBody.close();
+            } catch (IOException e) {
+                LOGGER.debug("could not drain response of " + connection.getURL() + ", connection is not reused: " + e.getMessage());
+                connection.disconnect();
+            } finally {
+                permits.release();
+            }
+        }
+
+        @Override
+        public synchronized void abort() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            connection.disconnect();
+            if (isDecoded()) {
+                IOUtils.closeQuietly(decodedBody);
+            }
+            permits.release();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package microservice.interservicecommunication;
+
+import microservice.interservicecommunication.stub.StubHttpServer;
+import microservicecommons.interservicecommunication.BatchRequestBuilder;
+import microservicecommons.interservicecommunication.BatchingCollapser;
+import microservicecommons.interservicecommunication.model.RetryOptions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class BatchingCollapserTest {
+
+    public static class Entity {
+        public Integer id;
+        public String name;
+
+        public Integer getId() {
+            return id;
+        }
+    }
+
+    private StubHttpServer server;
+
+    private BatchRequestBuilder<Integer> requestBuilder;
+
+    @Before
+    public void setUp() throws Exception {
+        // answers /entities?ids=1,2,3 with the entities of all ids, except 13
+        server = new StubHttpServer().handle("/entities", exchange -> {
+            String ids = exchange.getRequestURI().getQuery().substring("ids=".length());
+            String body = "[" + Arrays.stream(ids.split(","))
+                    .filter(id -> !id.equals("13"))
+                    .map(id -> "{\"id\":" + id + ",\"name\":\"entity-" + id + "\"}")
+                    .collect(Collectors.joining(",")) + "]";
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(bytes);
+            }
+        });
+        URL base = server.url("/entities");
+        requestBuilder = keys -> new URL(base, "/entities?ids=" + keys.stream().map(String::valueOf).collect(Collectors.joining(",")));
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void shouldCollapseLookupsIntoBatches() throws Exception {
+        List<Future<Entity>> futures = new ArrayList<>();
+        for (int id = 0; id < 20; id++) {
+            futures.add(new BatchingCollapser<>("entities-" + server.url("/").getPort(), id, Entity.class, requestBuilder, Entity::getId, 50, 100).queue());
+        }
+        for (int id = 0; id < 20; id++) {
+            Entity entity = futures.get(id).get();
+            if (id == 13) {
+                assertThat(entity, is(nullValue()));
+            } else {
+                assertThat(entity.id, is(id));
+                assertThat(entity.name, is("entity-" + id));
+            }
+        }
+        assertThat(server.getRequestCount(), is(lessThanOrEqualTo(2)));
+    }
+
+    @Test
+    public void shouldRespectMaxBatchSize() throws Exception {
+        List<Future<Entity>> futures = new ArrayList<>();
+        for (int id = 0; id < 10; id++) {
+            futures.add(new BatchingCollapser<>("small-batches-" + server.url("/").getPort(), id, Entity.class, requestBuilder, Entity::getId, 200, 5).queue());
+        }
+        for (int id = 0; id < 10; id++) {
+            assertThat(futures.get(id).get().id, is(id));
+        }
+        assertThat(server.getRequestCount(), is(2));
+    }
+
+    @Test
+    public void shouldRetryFailedBatch() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        server.handle("/flaky", exchange -> {
+            // the first batch request fails
+            byte[] bytes = (requests.incrementAndGet() == 1 ? "broken" : "[{\"id\":1,\"name\":\"entity-1\"}]").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(requests.get() == 1 ? 500 : 200, bytes.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(bytes);
+            }
+        });
+        URL flaky = server.url("/flaky");
+
+        Entity entity = new BatchingCollapser<Integer, Entity>("retried-" + server.url("/").getPort(), 1, Entity.class, keys -> flaky, Entity::getId, 10, 100,
+                new RetryOptions(1, RetryOptions.RetryFunctionType.LINEAR).withDelays(0, 0), 5000).execute();
+
+        assertThat(entity.name, is("entity-1"));
+        assertThat(requests.get(), is(2));
+    }
+}
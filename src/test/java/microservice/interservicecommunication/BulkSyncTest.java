@@ -0,0 +1,155 @@
+package microservice.interservicecommunication;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import microservice.interservicecommunication.stub.StubHttpServer;
+import microservicecommons.interservicecommunication.BulkSync;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.fail;
+
+public class BulkSyncTest {
+
+    public static class Record {
+        public int id;
+        public String name;
+
+        public Record() {
+        }
+
+        public Record(int id) {
+            this.id = id;
+            this.name = "record" + id;
+        }
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+    private StubHttpServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        // answers with the amount of received records as affectedAmount, the first failuresLeft requests fail
+        server = new StubHttpServer().handle("/sync", exchange -> {
+            int current = concurrent.incrementAndGet();
+            maxConcurrent.accumulateAndGet(current, Math::max);
+            JsonNode records = objectMapper.readTree(exchange.getRequestBody());
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            String response;
+            if (failuresLeft.getAndDecrement() > 0) {
+                response = "{\"success\":false,\"message\":\"database locked\"}";
+            } else {
+                batchSizes.add(records.size());
+                response = "{\"success\":true,\"message\":\"ok\",\"affectedAmount\":" + records.size() + "}";
+            }
+            byte[] body = response.getBytes(StandardCharsets.UTF_8);
+            concurrent.decrementAndGet();
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    private BulkSync<Record> bulkSync() throws Exception {
+        return BulkSync.<Record>of("bulkSync", server.url("/sync").toString()).withBatchRetries(2, 10);
+    }
+
+    private static Stream<Record> records(int amount) {
+        return IntStream.range(0, amount).mapToObj(Record::new);
+    }
+
+    @Test
+    public void shouldSumAffectedAmountOfAllBatches() throws Exception {
+        BulkSync.Result<Record> result = bulkSync().withBatchSize(10, Integer.MAX_VALUE).withParallelism(3).execute(records(95));
+
+        assertThat(result.isSuccess(), is(true));
+        assertThat(result.getAffectedAmount(), is(95L));
+        assertThat(result.getBatches(), is(10));
+        assertThat(batchSizes.stream().mapToInt(Integer::intValue).max().getAsInt(), is(10));
+        assertThat(maxConcurrent.get(), is(lessThanOrEqualTo(3)));
+    }
+
+    @Test
+    public void shouldBoundBatchesByBytes() throws Exception {
+        // each record is about 30 bytes
+        BulkSync.Result<Record> result = bulkSync().withBatchSize(1000, 100).execute(records(20));
+
+        assertThat(result.getAffectedAmount(), is(20L));
+        assertThat(batchSizes.stream().mapToInt(Integer::intValue).max().getAsInt(), is(lessThanOrEqualTo(3)));
+    }
+
+    @Test
+    public void shouldRetryOnlyFailedBatches() throws Exception {
+        failuresLeft.set(1);
+        BulkSync.Result<Record> result = bulkSync().withBatchSize(10, Integer.MAX_VALUE).withParallelism(1).execute(records(30));
+
+        assertThat(result.isSuccess(), is(true));
+        assertThat(result.getRetries(), is(1));
+        assertThat(result.getAffectedAmount(), is(30L));
+        assertThat(server.getRequestCount(), is(4));
+    }
+
+    @Test
+    public void shouldReportBatchesFailingAllRetries() throws Exception {
+        failuresLeft.set(3);
+        BulkSync.Result<Record> result = bulkSync().withBatchSize(10, Integer.MAX_VALUE).withParallelism(1).execute(records(20));
+
+        assertThat(result.isSuccess(), is(false));
+        assertThat(result.getAffectedAmount(), is(10L));
+        assertThat(result.getFailedBatches().size(), is(1));
+        BulkSync.FailedBatch<Record> failed = result.getFailedBatches().get(0);
+        assertThat(failed.getIndex(), is(0));
+        assertThat(failed.getMessage(), is("database locked"));
+        assertThat(failed.getRecords().stream().map(record -> record.id).collect(Collectors.toList()),
+                is(IntStream.range(0, 10).boxed().collect(Collectors.toList())));
+    }
+
+    @Test
+    public void shouldWaitForBatchesInFlightIfRecordsFail() throws Exception {
+        Iterator<Record> failingRecords = Stream.concat(records(25), Stream.of((Record) null))
+                .map(record -> {
+                    if (record == null) {
+                        throw new IllegalStateException("source broken");
+                    }
+                    return record;
+                }).iterator();
+        try {
+            bulkSync().withBatchSize(10, Integer.MAX_VALUE).withParallelism(2).execute(failingRecords);
+            fail("execute should have failed");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("source broken"));
+        }
+
+        assertThat(batchSizes.size(), is(2));
+        assertThat(concurrent.get(), is(0));
+    }
+}
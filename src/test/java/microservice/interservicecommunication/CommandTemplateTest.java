@@ -0,0 +1,80 @@
+package microservice.interservicecommunication;
+
+import microservice.interservicecommunication.stub.StubHttpServer;
+import microservicecommons.interservicecommunication.CommandTemplate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class CommandTemplateTest {
+
+    public static class Response {
+        public String field;
+    }
+
+    private StubHttpServer server;
+    private final AtomicReference<String> requestedUri = new AtomicReference<>();
+    private final AtomicReference<String> requestedHeader = new AtomicReference<>();
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubHttpServer().handle("/entities", exchange -> {
+            requestedUri.set(exchange.getRequestURI().getRawPath() + "?" + exchange.getRequestURI().getRawQuery());
+            requestedHeader.set(exchange.getRequestHeaders().getFirst("X-Client"));
+            byte[] body = "{\"field\":\"value\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    private CommandTemplate<Response> template() throws Exception {
+        return CommandTemplate.of("getEntity", server.url("/entities/{id}?q={query}").toString(), Response.class)
+                .withHeader("X-Client", "test");
+    }
+
+    @Test
+    public void shouldExpandPlaceholders() throws Exception {
+        Response response = template().create(4711, "simple").execute();
+
+        assertThat(response.field, is("value"));
+        assertThat(requestedUri.get(), is("/entities/4711?q=simple"));
+        assertThat(requestedHeader.get(), is("test"));
+    }
+
+    @Test
+    public void shouldEncodeValues() throws Exception {
+        template().create("a b/c", "x&y z").execute();
+
+        assertThat(requestedUri.get(), is("/entities/a%20b%2Fc?q=x%26y+z"));
+    }
+
+    @Test
+    public void shouldCreateIndependentCommands() throws Exception {
+        CommandTemplate<Response> template = template();
+        template.create(1, "a").execute();
+        template.create(2, "b").execute();
+
+        assertThat(requestedUri.get(), is("/entities/2?q=b"));
+        assertThat(template.getPlaceholders(), is(Arrays.asList("id", "query")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectMissingValues() throws Exception {
+        template().create(1);
+    }
+}
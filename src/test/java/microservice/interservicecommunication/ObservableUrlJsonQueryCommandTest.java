@@ -0,0 +1,95 @@
+package microservice.interservicecommunication;
+
+import microservice.interservicecommunication.stub.StubHttpServer;
+import microservicecommons.interservicecommunication.ObservableUrlJsonQueryCommand;
+import microservicecommons.interservicecommunication.exception.ApiCommunicationException;
+import microservicecommons.interservicecommunication.model.RetryOptions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ObservableUrlJsonQueryCommandTest {
+
+    public static class Response {
+        public String field;
+    }
+
+    private StubHttpServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubHttpServer()
+                .respond("/ok", 200, "{\"field\":\"value\",\"other\":1}")
+                .respond("/fail", 500, "something went wrong");
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void shouldRunManyConcurrentQueries() throws Exception {
+        URL url = server.url("/ok");
+        List<CompletableFuture<Response>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            futures.add(new ObservableUrlJsonQueryCommand<Response>("testCommand", url, Response.class, "observableTestGroup") {}.toCompletableFuture());
+        }
+        for (CompletableFuture<Response> future : futures) {
+            assertThat(future.get(10, TimeUnit.SECONDS).field, is("value"));
+        }
+    }
+
+    @Test
+    public void shouldNotKeepJvmAliveWithThreadsOfDefaultAsyncTransport() throws Exception {
+        new ObservableUrlJsonQueryCommand<Response>("testCommand", server.url("/ok"), Response.class, "observableTestGroup") {}.toCompletableFuture().get(10, TimeUnit.SECONDS);
+
+        List<Thread> transportThreads = Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().startsWith("jetty-async-transport"))
+                .collect(Collectors.toList());
+        assertThat(transportThreads.isEmpty(), is(false));
+        for (Thread thread : transportThreads) {
+            assertThat(thread.getName(), thread.isDaemon(), is(true));
+        }
+    }
+
+    /**
+     * checks that failing responses are retried on a timer and mapped to the same problem reason as in UrlJsonQueryCommand
+     */
+    @Test
+    public void shouldRetryAndThrowExceptionWithReasonServerError() throws Exception {
+        AtomicInteger retries = new AtomicInteger();
+        RetryOptions retryOptions = new RetryOptions(2, RetryOptions.RetryFunctionType.LINEAR, retry -> {
+            retries.incrementAndGet();
+            return null;
+        });
+        ObservableUrlJsonQueryCommand<Response> command = new ObservableUrlJsonQueryCommand<Response>(
+                "testCommand", server.url("/fail"), new HashMap<>(), "GET", Response.class, "observableTestGroup", "", retryOptions, 5000) {};
+
+        try {
+            command.toCompletableFuture().get(10, TimeUnit.SECONDS);
+            fail("expected an exception");
+        } catch (ExecutionException acx) {
+            assertThat(acx.getCause().getCause(),is(instanceOf(ApiCommunicationException.class)));
+            ApiCommunicationException apiCommunicationException = (ApiCommunicationException) acx.getCause().getCause();
+            assertThat(apiCommunicationException.getProblemReason(),is(ApiCommunicationException.ProblemReason.SERVER_ERROR));
+            assertThat(apiCommunicationException.getMessage(),endsWith("something went wrong"));
+        }
+        assertThat(retries.get(), is(2));
+        assertThat(server.getRequestCount(), is(3));
+    }
+}
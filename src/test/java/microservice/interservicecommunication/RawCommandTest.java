@@ -0,0 +1,134 @@
+package microservice.interservicecommunication;
+
+import microservice.interservicecommunication.stub.StubHttpServer;
+import microservicecommons.interservicecommunication.UrlRawQueryCommand;
+import microservicecommons.interservicecommunication.UrlRawTransferCommand;
+import microservicecommons.interservicecommunication.exception.ApiCommunicationException;
+import microservicecommons.interservicecommunication.raw.ByteBufferPool;
+import microservicecommons.interservicecommunication.raw.RawBody;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.fail;
+
+public class RawCommandTest {
+
+    private static final String BODY = "{\"field\":\"value\",\"list\":[1,2,3]}";
+
+    private StubHttpServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubHttpServer()
+                .respond("/ok", 200, BODY)
+                .respond("/500", 500, "500 Internal Server Error")
+                .handle("/slow", exchange -> {
+                    // 50 chunks of 100 bytes within about a second
+                    exchange.sendResponseHeaders(200, 0);
+                    try (OutputStream outputStream = exchange.getResponseBody()) {
+                        for (int i = 0; i < 50; i++) {
+                            outputStream.write(new byte[100]);
+                            outputStream.flush();
+                            Thread.sleep(20);
+                        }
+                    } catch (InterruptedException | IOException e) {
+                        // the client went away
+                    }
+                });
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    private UrlRawQueryCommand rawCommand(URL url, ByteBufferPool pool) {
+        return new UrlRawQueryCommand("rawCommand", url, "testGroup") {
+            @Override
+            protected ByteBufferPool getBufferPool() {
+                return pool;
+            }
+        };
+    }
+
+    @Test
+    public void shouldReturnUnparsedBody() throws Exception {
+        ByteBufferPool pool = new ByteBufferPool(1024, 4);
+        try (RawBody body = rawCommand(server.url("/ok"), pool).execute()) {
+            assertThat(new String(body.toByteArray(), StandardCharsets.UTF_8), is(BODY));
+            assertThat(body.getContentType(), is("application/json"));
+        }
+        try (RawBody body = rawCommand(server.url("/ok"), pool).execute()) {
+            assertThat(body.getLength(), is(BODY.length()));
+        }
+
+        assertThat(pool.getAllocations(), is(1L));
+        assertThat(pool.getReuses(), is(1L));
+        assertThat(pool.getPooled(), is(1));
+    }
+
+    @Test
+    public void shouldGrowBufferForLargeBody() throws Exception {
+        ByteBufferPool pool = new ByteBufferPool(8, 4);
+        try (RawBody body = rawCommand(server.url("/ok"), pool).execute()) {
+            assertThat(new String(body.toByteArray(), StandardCharsets.UTF_8), is(BODY));
+        }
+
+        assertThat(pool.getPooled(), is(1));
+    }
+
+    @Test
+    public void shouldTransferBodyToStream() throws Exception {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        long transferred = new UrlRawTransferCommand("transferCommand", server.url("/ok"), target, "testGroup", 5000) {}.execute();
+
+        assertThat(transferred, is((long) BODY.length()));
+        assertThat(target.toString("UTF-8"), is(BODY));
+    }
+
+    @Test
+    public void shouldTransferBodyToChannel() throws Exception {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        new UrlRawTransferCommand("transferCommand", server.url("/ok"), Channels.newChannel(target), "testGroup", 5000) {}.execute();
+
+        assertThat(target.toString("UTF-8"), is(BODY));
+    }
+
+    @Test
+    public void shouldStopTransferOnTimeout() throws Exception {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        try {
+            new UrlRawTransferCommand("slowTransferCommand", server.url("/slow"), target, "testGroup", 200) {}.execute();
+            fail("command should have timed out");
+        } catch (Exception e) {
+            Thread.sleep(200);
+            int written = target.size();
+            Thread.sleep(200);
+            assertThat(target.size(), is(written));
+            assertThat(written, is(lessThan(5000)));
+        }
+    }
+
+    @Test
+    public void shouldKeepErrorMapping() throws Exception {
+        try {
+            rawCommand(server.url("/500"), ByteBufferPool.getDefault()).execute();
+            fail("command should have failed");
+        } catch (Exception e) {
+            assertThat(e.getCause(), is(instanceOf(ApiCommunicationException.class)));
+            assertThat(((ApiCommunicationException) e.getCause()).getProblemReason(), is(ApiCommunicationException.ProblemReason.SERVER_ERROR));
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package microservice.interservicecommunication;
+
+import microservice.interservicecommunication.stub.StubHttpServer;
+import microservicecommons.interservicecommunication.MicroserviceQueryCommand;
+import microservicecommons.interservicecommunication.ScatterGather;
+import microservicecommons.interservicecommunication.UrlJsonQueryCommand;
+import microservicecommons.interservicecommunication.exception.ApiCommunicationException.ProblemReason;
+import microservicecommons.interservicecommunication.model.QueryOptions;
+import microservicecommons.interservicecommunication.model.RetryOptions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+public class ScatterGatherTest {
+
+    public static class Response {
+        public String field;
+    }
+
+    private StubHttpServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubHttpServer()
+                .respond("/fast", 200, "{\"field\":\"fast\"}")
+                .respond("/other", 200, "{\"field\":\"other\"}")
+                .respond("/failing", 500, "broken")
+                .respond("/slow", 200, "{\"field\":\"slow\"}", 2000);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    private UrlJsonQueryCommand<Response> command(String path) throws Exception {
+        return command(path, 0);
+    }
+
+    private UrlJsonQueryCommand<Response> command(String path, int retries) throws Exception {
+        return new MicroserviceQueryCommand<>("scatterCommand", server.url(path), "GET", new HashMap<>(), Response.class, false, "",
+                new RetryOptions(retries, RetryOptions.RetryFunctionType.LINEAR), 5000, QueryOptions.DEFAULT);
+    }
+
+    @Test
+    public void shouldReturnPartialResultsAtDeadline() throws Exception {
+        Map<String, UrlJsonQueryCommand<Response>> commands = new LinkedHashMap<>();
+        commands.put("fast", command("/fast"));
+        commands.put("failing", command("/failing"));
+        commands.put("slow", command("/slow"));
+
+        long start = System.currentTimeMillis();
+        ScatterGather.Result<String> result = ScatterGather.all(500).execute(commands);
+
+        assertThat(System.currentTimeMillis() - start, is(lessThan(1500L)));
+        assertThat(result.<Response>get("fast").field, is("fast"));
+        assertThat(result.getProblemReason("failing"), is(ProblemReason.SERVER_ERROR));
+        assertThat(result.getCancelled(), is(Collections.singleton("slow")));
+        assertThat(result.isSuccessful(), is(false));
+    }
+
+    @Test
+    public void shouldEndAfterFirstN() throws Exception {
+        Map<String, UrlJsonQueryCommand<Response>> commands = new LinkedHashMap<>();
+        commands.put("slow", command("/slow"));
+        commands.put("fast", command("/fast"));
+        commands.put("other", command("/other"));
+
+        long start = System.currentTimeMillis();
+        ScatterGather.Result<String> result = ScatterGather.firstN(2, 5000).execute(commands);
+
+        assertThat(System.currentTimeMillis() - start, is(lessThan(1500L)));
+        assertThat(result.isSuccessful(), is(true));
+        assertThat(result.getValues().size(), is(2));
+        assertThat(result.getCancelled(), is(Collections.singleton("slow")));
+    }
+
+    @Test
+    public void shouldReturnNothingOnFirstFailure() throws Exception {
+        Map<String, UrlJsonQueryCommand<Response>> commands = new LinkedHashMap<>();
+        commands.put("slow", command("/slow"));
+        commands.put("fast", command("/fast"));
+        commands.put("failing", command("/failing"));
+
+        long start = System.currentTimeMillis();
+        ScatterGather.Result<String> result = ScatterGather.allOrNothing(5000).execute(commands);
+
+        assertThat(System.currentTimeMillis() - start, is(lessThan(1500L)));
+        assertThat(result.isSuccessful(), is(false));
+        assertThat(result.getValues().isEmpty(), is(true));
+        assertThat(result.getProblemReason("failing"), is(ProblemReason.SERVER_ERROR));
+        assertThat(result.getCancelled().contains("slow"), is(true));
+    }
+
+    @Test
+    public void shouldNotRetryCancelledCommands() throws Exception {
+        server.respond("/slowFailing", 500, "broken", 700);
+
+        ScatterGather.Result<String> result = ScatterGather.all(300)
+                .execute(Collections.singletonMap("slowFailing", command("/slowFailing", 3)));
+        Thread.sleep(1500);
+
+        assertThat(result.getCancelled(), is(Collections.singleton("slowFailing")));
+        assertThat(server.getRequestCount(), is(1));
+    }
+}
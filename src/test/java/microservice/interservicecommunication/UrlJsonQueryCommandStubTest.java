@@ -0,0 +1,92 @@
+package microservice.interservicecommunication;
+
+import microservice.interservicecommunication.stub.StubHttpServer;
+import microservicecommons.interservicecommunication.UrlJsonQueryCommand;
+import microservicecommons.interservicecommunication.exception.ApiCommunicationException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URL;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * the checks of UrlJsonQueryCommandTest against a local stub server, so they run without network access
+ */
+public class UrlJsonQueryCommandStubTest {
+
+    public static class Response {
+        public String field;
+    }
+
+    private StubHttpServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubHttpServer()
+                .respond("/ok", 200, "{\"field\":\"value\"}")
+                .respond("/501", 501, "501 Not Implemented")
+                .respond("/400", 400, "400 Bad Request")
+                .respond("/500", 500, "500 Internal Server Error");
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    private ApiCommunicationException executeFailing(URL url) {
+        try {
+            new UrlJsonQueryCommand<Response>("testCommand", url, Response.class, false, "testGroup") {}.execute();
+        } catch (Exception acx) {
+            assertThat(acx.getCause(), is(instanceOf(ApiCommunicationException.class)));
+            return (ApiCommunicationException) acx.getCause();
+        }
+        fail("command should have failed");
+        return null;
+    }
+
+    @Test
+    public void shouldReturnMappedResponse() throws Exception {
+        Response response = new UrlJsonQueryCommand<Response>("testCommand", server.url("/ok"), Response.class, false, "testGroup") {}.execute();
+
+        assertThat(response.field, is("value"));
+    }
+
+    @Test
+    public void shouldThrowExceptionWithReasonConnectionProblem() throws Exception {
+        URL url = server.url("/ok");
+        server.close();
+
+        ApiCommunicationException apiCommunicationException = executeFailing(url);
+        assertThat(apiCommunicationException.getProblemReason(), is(ApiCommunicationException.ProblemReason.CONNECTION_IMPOSSIBLE));
+    }
+
+    @Test
+    public void shouldThrowExceptionWithReasonServerUnable() throws Exception {
+        ApiCommunicationException apiCommunicationException = executeFailing(server.url("/501"));
+
+        assertThat(apiCommunicationException.getProblemReason(), is(ApiCommunicationException.ProblemReason.SERVER_UNABLE));
+        assertThat(apiCommunicationException.getMessage(), endsWith("501 Not Implemented"));
+        assertThat(apiCommunicationException.getMessage(), containsString("/501"));
+    }
+
+    @Test
+    public void shouldThrowExceptionWithReasonClientMistake() throws Exception {
+        ApiCommunicationException apiCommunicationException = executeFailing(server.url("/400"));
+
+        assertThat(apiCommunicationException.getProblemReason(), is(ApiCommunicationException.ProblemReason.CLIENT_MISTAKE));
+        assertThat(apiCommunicationException.getMessage(), endsWith("400 Bad Request"));
+    }
+
+    @Test
+    public void shouldThrowExceptionWithReasonServerError() throws Exception {
+        ApiCommunicationException apiCommunicationException = executeFailing(server.url("/500"));
+
+        assertThat(apiCommunicationException.getProblemReason(), is(ApiCommunicationException.ProblemReason.SERVER_ERROR));
+        assertThat(apiCommunicationException.getMessage(), endsWith("500 Internal Server Error"));
+    }
+}
@@ -0,0 +1,95 @@
+package microservice.interservicecommunication;
+
+import microservice.interservicecommunication.stub.StubHttpServer;
+import microservicecommons.interservicecommunication.UrlJsonStreamCommand;
+import microservicecommons.interservicecommunication.model.RetryOptions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+public class UrlJsonStreamCommandTest {
+
+    private static final int ELEMENTS = 2_500_000;
+    private static final String PADDING = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+
+    public static class Element {
+        public long id;
+        public String name;
+        public String payload;
+    }
+
+    private StubHttpServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubHttpServer()
+                .respondStreaming("/elements", 200, UrlJsonStreamCommandTest::writeElements);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    /**
+     * an array of about 300MB, generated while it is sent
+     */
+    private static void writeElements(OutputStream outputStream) throws IOException {
+        OutputStream out = new BufferedOutputStream(outputStream, 64 * 1024);
+        out.write('[');
+        for (int i = 0; i < ELEMENTS; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write(("{\"id\":" + i + ",\"name\":\"element-" + i + "\",\"payload\":\"" + PADDING + "\"}").getBytes(StandardCharsets.UTF_8));
+        }
+        out.write(']');
+        out.flush();
+    }
+
+    /**
+     * streams a multi-hundred-MB array and checks that all elements arrive in order while the used heap stays far
+     * below the response size
+     */
+    @Test
+    public void shouldStreamLargeArrayWithBoundedHeap() throws Exception {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long baseline = runtime.totalMemory() - runtime.freeMemory();
+        AtomicLong expectedId = new AtomicLong();
+        AtomicLong maxUsedHeap = new AtomicLong();
+
+        UrlJsonStreamCommand<Element> command = new UrlJsonStreamCommand<Element>(
+                "streamCommand",
+                server.url("/elements"),
+                Element.class,
+                element -> {
+                    assertThat(element.id, is(expectedId.getAndIncrement()));
+                    if (element.id % 250_000 == 0) {
+                        System.gc();
+                        maxUsedHeap.accumulateAndGet(runtime.totalMemory() - runtime.freeMemory(), Math::max);
+                    }
+                },
+                "testGroup",
+                new RetryOptions(0, RetryOptions.RetryFunctionType.LINEAR),
+                120000
+        ) {};
+
+        Long count = command.execute();
+
+        assertThat(count, is((long) ELEMENTS));
+        assertThat(expectedId.get(), is((long) ELEMENTS));
+        // the response is about 300MB, a fully buffered list would not fit into this
+        assertThat(maxUsedHeap.get() - baseline, is(lessThan(64L * 1024 * 1024)));
+    }
+}
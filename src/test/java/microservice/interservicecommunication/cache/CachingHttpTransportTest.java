@@ -0,0 +1,112 @@
+package microservice.interservicecommunication.cache;
+
+import com.sun.net.httpserver.HttpExchange;
+import microservice.interservicecommunication.stub.StubHttpServer;
+import microservicecommons.interservicecommunication.cache.CachingHttpTransport;
+import microservicecommons.interservicecommunication.cache.ResponseCache;
+import microservicecommons.interservicecommunication.transport.HttpRequest;
+import microservicecommons.interservicecommunication.transport.HttpResponse;
+import microservicecommons.interservicecommunication.transport.UrlConnectionHttpTransport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class CachingHttpTransportTest {
+
+    private static final String BODY = "{\"field\":\"value\"}";
+
+    private StubHttpServer server;
+
+    private CachingHttpTransport transport;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubHttpServer()
+                .handle("/max-age", exchange -> {
+                    exchange.getResponseHeaders().set("Cache-Control", "max-age=60");
+                    send(exchange, 200, BODY);
+                })
+                .handle("/etag", exchange -> {
+                    exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+                    exchange.getResponseHeaders().set("ETag", "\"v1\"");
+                    if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                        exchange.sendResponseHeaders(304, -1);
+                        exchange.close();
+                    } else {
+                        send(exchange, 200, BODY);
+                    }
+                })
+                .handle("/no-store", exchange -> {
+                    exchange.getResponseHeaders().set("Cache-Control", "no-store");
+                    send(exchange, 200, BODY);
+                });
+        transport = new CachingHttpTransport(new UrlConnectionHttpTransport(), new ResponseCache(2, 60000, 1024));
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    private String get(URL url) throws IOException {
+        try (HttpResponse response = transport.execute(new HttpRequest(url, "GET", null, null))) {
+            return response.readBodyAsString();
+        }
+    }
+
+    @Test
+    public void shouldAnswerFreshResponsesFromCache() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            assertThat(get(server.url("/max-age")), is(BODY));
+        }
+        assertThat(server.getRequestCount(), is(1));
+        assertThat(transport.getCache().getMisses(), is(1L));
+        assertThat(transport.getCache().getHits(), is(4L));
+    }
+
+    @Test
+    public void shouldRevalidateWithETag() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            assertThat(get(server.url("/etag")), is(BODY));
+        }
+        assertThat(server.getRequestCount(), is(3));
+        assertThat(transport.getCache().getMisses(), is(1L));
+        assertThat(transport.getCache().getRevalidations(), is(2L));
+    }
+
+    @Test
+    public void shouldNotStoreNoStoreResponses() throws Exception {
+        get(server.url("/no-store"));
+        get(server.url("/no-store"));
+        assertThat(server.getRequestCount(), is(2));
+        assertThat(transport.getCache().size(), is(0));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedEntries() throws Exception {
+        get(server.url("/max-age?id=1"));
+        get(server.url("/max-age?id=2"));
+        get(server.url("/max-age?id=1"));
+        get(server.url("/max-age?id=3"));
+        get(server.url("/max-age?id=1"));
+        assertThat(transport.getCache().getEvictions(), is(1L));
+        assertThat(transport.getCache().getHits(), is(2L));
+        assertThat(server.getRequestCount(), is(3));
+    }
+}
@@ -0,0 +1,125 @@
+package microservice.interservicecommunication.coalescing;
+
+import microservice.interservicecommunication.stub.StubHttpServer;
+import microservicecommons.interservicecommunication.MicroserviceQueryCommand;
+import microservicecommons.interservicecommunication.coalescing.InFlightRequests;
+import microservicecommons.interservicecommunication.model.QueryOptions;
+import microservicecommons.interservicecommunication.model.RetryOptions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class InFlightRequestsTest {
+
+    private static final int CALLERS = 8;
+
+    public static class Response {
+        public String field;
+    }
+
+    private StubHttpServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubHttpServer().handle("/slow", exchange -> {
+            try {
+                // keeps the first request in flight until all callers have started
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "{\"field\":\"value\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    private MicroserviceQueryCommand<Response> command(URL url, QueryOptions queryOptions) {
+        return new MicroserviceQueryCommand<>("coalescingCommand", url, "GET", new HashMap<>(), Response.class, false, "",
+                new RetryOptions(0, RetryOptions.RetryFunctionType.LINEAR), 5000, queryOptions);
+    }
+
+    private List<Response> executeConcurrently(URL url, QueryOptions queryOptions) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Response>> futures = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return command(url, queryOptions).execute();
+            }));
+        }
+        start.countDown();
+        List<Response> responses = new ArrayList<>();
+        for (Future<Response> future : futures) {
+            responses.add(future.get());
+        }
+        executor.shutdown();
+        return responses;
+    }
+
+    @Test
+    public void shouldHitUpstreamOnceForConcurrentIdenticalQueries() throws Exception {
+        List<Response> responses = executeConcurrently(server.url("/slow"), QueryOptions.DEFAULT.withCoalescing(true));
+
+        assertThat(server.getRequestCount(), is(1));
+        for (Response response : responses) {
+            assertThat(response, is(sameInstance(responses.get(0))));
+            assertThat(response.field, is("value"));
+        }
+    }
+
+    @Test
+    public void shouldHitUpstreamForEachQueryWithoutCoalescing() throws Exception {
+        executeConcurrently(server.url("/slow"), QueryOptions.DEFAULT);
+
+        assertThat(server.getRequestCount(), is(CALLERS));
+    }
+
+    @Test
+    public void shouldLetWaitingCallerExecuteIfRunningCallIsCancelled() throws Exception {
+        InFlightRequests inFlightRequests = new InFlightRequests();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountDownLatch running = new CountDownLatch(1);
+        Future<String> cancelled = executor.submit(() -> inFlightRequests.execute("key", () -> {
+            running.countDown();
+            Thread.sleep(10000);
+            return "cancelled";
+        }));
+        running.await();
+        Future<String> waiting = executor.submit(() -> inFlightRequests.execute("key", () -> "executed again"));
+        Thread.sleep(100);
+        assertThat(waiting.isDone(), is(false));
+
+        // like ScatterGather cancelling a command after its deadline
+        cancelled.cancel(true);
+
+        assertThat(waiting.get(5, TimeUnit.SECONDS), is("executed again"));
+        assertThat(inFlightRequests.getExecuted(), is(2L));
+        assertThat(inFlightRequests.getCoalesced(), is(0L));
+        executor.shutdown();
+    }
+}
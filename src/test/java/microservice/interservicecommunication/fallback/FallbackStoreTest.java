@@ -0,0 +1,219 @@
+package microservice.interservicecommunication.fallback;
+
+import microservice.interservicecommunication.stub.StubHttpServer;
+import microservicecommons.interservicecommunication.MicroserviceQueryCommand;
+import microservicecommons.interservicecommunication.fallback.FallbackStore;
+import microservicecommons.interservicecommunication.fallback.StaleValue;
+import microservicecommons.interservicecommunication.model.QueryOptions;
+import microservicecommons.interservicecommunication.model.RetryOptions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.Assert.fail;
+
+public class FallbackStoreTest {
+
+    public static class Response {
+        public String field;
+
+        public Response() {
+        }
+
+        public Response(String field) {
+            this.field = field;
+        }
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StubHttpServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubHttpServer();
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    private MicroserviceQueryCommand<Response> command(FallbackStore fallbackStore) throws Exception {
+        return command(fallbackStore, new HashMap<>());
+    }
+
+    private MicroserviceQueryCommand<Response> command(FallbackStore fallbackStore, Map<String,String> headers) throws Exception {
+        return new MicroserviceQueryCommand<>("fallbackCommand", server.url("/data"), "GET", headers, Response.class, false, "",
+                new RetryOptions(0, RetryOptions.RetryFunctionType.LINEAR), 5000, QueryOptions.DEFAULT.withFallbackStore(fallbackStore));
+    }
+
+    @Test
+    public void shouldServeStaleResultAndRefreshInBackground() throws Exception {
+        // answers the first request, fails the second, answers the third, which is the refresh, with a new value and
+        // fails all later ones
+        AtomicInteger requests = new AtomicInteger();
+        server.handle("/data", exchange -> {
+            int request = requests.incrementAndGet();
+            boolean failing = request == 2 || request > 3;
+            byte[] body = (failing ? "broken" : request == 1 ? "{\"field\":\"first\"}" : "{\"field\":\"second\"}").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(failing ? 503 : 200, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        });
+        FallbackStore fallbackStore = new FallbackStore();
+        assertThat(command(fallbackStore).execute().field, is("first"));
+
+        MicroserviceQueryCommand<Response> failing = command(fallbackStore);
+        assertThat(failing.execute().field, is("first"));
+        assertThat(failing.isResponseFromFallback(), is(true));
+        assertThat(failing.getStaleAgeMillis(), is(greaterThanOrEqualTo(0L)));
+        assertThat(fallbackStore.getRefreshes(), is(1L));
+
+        for (int i = 0; i < 50 && requests.get() < 3; i++) {
+            Thread.sleep(20);
+        }
+        Thread.sleep(50);
+        MicroserviceQueryCommand<Response> refreshed = command(fallbackStore);
+        assertThat(refreshed.execute().field, is("second"));
+        assertThat(refreshed.isResponseFromFallback(), is(true));
+    }
+
+    @Test
+    public void shouldFailWithoutStoredResult() throws Exception {
+        FallbackStore fallbackStore = new FallbackStore();
+        server.respond("/data", 500, "broken");
+        MicroserviceQueryCommand<Response> failing = command(fallbackStore);
+        try {
+            failing.execute();
+        } catch (RuntimeException e) {
+            assertThat(failing.getStaleAgeMillis(), is(-1L));
+            assertThat(fallbackStore.getMisses(), is(1L));
+            return;
+        }
+        throw new AssertionError("command should have failed");
+    }
+
+    @Test
+    public void shouldNotServeStoredResultForClientError() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        server.handle("/data", exchange -> {
+            boolean missing = requests.incrementAndGet() > 1;
+            byte[] body = (missing ? "not found" : "{\"field\":\"first\"}").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(missing ? 404 : 200, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        });
+        FallbackStore fallbackStore = new FallbackStore();
+        assertThat(command(fallbackStore).execute().field, is("first"));
+
+        MicroserviceQueryCommand<Response> missing = command(fallbackStore);
+        try {
+            missing.execute();
+            fail("a 404 should not be answered with the stored result");
+        } catch (RuntimeException e) {
+            assertThat(missing.isResponseFromFallback(), is(false));
+            assertThat(missing.getStaleAgeMillis(), is(-1L));
+            assertThat(fallbackStore.getRefreshes(), is(0L));
+        }
+    }
+
+    @Test
+    public void shouldNotServeStoredResultOfOtherCredentials() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        server.handle("/data", exchange -> {
+            boolean failing = requests.incrementAndGet() > 1;
+            byte[] body = (failing ? "broken" : "{\"field\":\"alice\"}").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(failing ? 503 : 200, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        });
+        FallbackStore fallbackStore = new FallbackStore();
+        assertThat(command(fallbackStore, Collections.singletonMap("Authorization", "Bearer alice")).execute().field, is("alice"));
+
+        MicroserviceQueryCommand<Response> otherUser = command(fallbackStore, Collections.singletonMap("Authorization", "Bearer bob"));
+        try {
+            otherUser.execute();
+            fail("command of another user should not get the stored result");
+        } catch (RuntimeException e) {
+            assertThat(otherUser.isResponseFromFallback(), is(false));
+            assertThat(fallbackStore.getMisses(), is(1L));
+        }
+
+        MicroserviceQueryCommand<Response> sameUser = command(fallbackStore, Collections.singletonMap("Authorization", "Bearer alice"));
+        assertThat(sameUser.execute().field, is("alice"));
+        assertThat(sameUser.isResponseFromFallback(), is(true));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsed() {
+        FallbackStore fallbackStore = new FallbackStore(2, FallbackStore.DEFAULT_MAX_STALE_MILLIS);
+        fallbackStore.put("a", new Response("a"));
+        fallbackStore.put("b", new Response("b"));
+        fallbackStore.get("a", Response.class);
+        fallbackStore.put("c", new Response("c"));
+
+        assertThat(fallbackStore.get("a", Response.class), is(notNullValue()));
+        assertThat(fallbackStore.get("b", Response.class), is(nullValue()));
+        assertThat(fallbackStore.size(), is(2));
+    }
+
+    @Test
+    public void shouldNotServeResultsOlderThanMaxStale() throws Exception {
+        FallbackStore fallbackStore = new FallbackStore(10, 50);
+        fallbackStore.put("a", new Response("a"));
+        Thread.sleep(100);
+
+        assertThat(fallbackStore.get("a", Response.class), is(nullValue()));
+    }
+
+    @Test
+    public void shouldKeepResultsAcrossRestarts() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("fallback.bin");
+        FallbackStore fallbackStore = new FallbackStore(10, FallbackStore.DEFAULT_MAX_STALE_MILLIS, 0, file, 4096, 0);
+        fallbackStore.put("a", new Response("old"));
+        fallbackStore.put("a", new Response("new"));
+        fallbackStore.put("b", new Response("b"));
+        fallbackStore.close();
+
+        FallbackStore restarted = new FallbackStore(10, FallbackStore.DEFAULT_MAX_STALE_MILLIS, 0, file, 4096, 0);
+        StaleValue<Response> stale = restarted.get("a", Response.class);
+        assertThat(stale.getValue().field, is("new"));
+        assertThat(restarted.size(), is(2));
+        restarted.close();
+    }
+
+    @Test
+    public void shouldCompactFullFile() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("fallback.bin");
+        FallbackStore fallbackStore = new FallbackStore(10, FallbackStore.DEFAULT_MAX_STALE_MILLIS, 0, file, 256, 0);
+        for (int i = 0; i < 100; i++) {
+            fallbackStore.put("a", new Response("value" + i));
+        }
+        fallbackStore.close();
+
+        FallbackStore restarted = new FallbackStore(10, FallbackStore.DEFAULT_MAX_STALE_MILLIS, 0, file, 256, 0);
+        StaleValue<Response> stale = restarted.get("a", Response.class);
+        assertThat(stale.getValue().field, is("value99"));
+        restarted.close();
+    }
+}
@@ -0,0 +1,106 @@
+package microservice.interservicecommunication.hedging;
+
+import microservice.interservicecommunication.stub.StubHttpServer;
+import microservicecommons.interservicecommunication.MicroserviceQueryCommand;
+import microservicecommons.interservicecommunication.hedging.HedgingPolicy;
+import microservicecommons.interservicecommunication.model.QueryOptions;
+import microservicecommons.interservicecommunication.model.RetryOptions;
+import microservicecommons.interservicecommunication.transport.BufferedHttpResponse;
+import microservicecommons.interservicecommunication.transport.HttpRequest;
+import microservicecommons.interservicecommunication.transport.HttpResponse;
+import microservicecommons.interservicecommunication.transport.HttpTransport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+public class HedgingPolicyTest {
+
+    public static class Response {
+        public String field;
+    }
+
+    private StubHttpServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        server = new StubHttpServer().handle("/sometimes-slow", exchange -> {
+            if (requests.incrementAndGet() == 1) {
+                try {
+                    // the first request hits a slow instance
+                    Thread.sleep(2000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            byte[] body = "{\"field\":\"value\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    private MicroserviceQueryCommand<Response> command(String method, HedgingPolicy hedgingPolicy) throws Exception {
+        return new MicroserviceQueryCommand<>("hedgingCommand", server.url("/sometimes-slow"), method, new HashMap<>(), Response.class, false, "{}",
+                new RetryOptions(0, RetryOptions.RetryFunctionType.LINEAR), 5000, QueryOptions.DEFAULT.withHedging(hedgingPolicy));
+    }
+
+    @Test
+    public void shouldAnswerFromHedgeRequestIfFirstRequestIsSlow() throws Exception {
+        HedgingPolicy hedgingPolicy = HedgingPolicy.afterDelay(50, 1.0);
+
+        long start = System.currentTimeMillis();
+        Response response = command("GET", hedgingPolicy).execute();
+
+        assertThat(response.field, is("value"));
+        assertThat(System.currentTimeMillis() - start, is(lessThan(1000L)));
+        assertThat(hedgingPolicy.getHedges(), is(1L));
+        assertThat(hedgingPolicy.getHedgeWins(), is(1L));
+        assertThat(server.getRequestCount(), is(2));
+    }
+
+    @Test
+    public void shouldRunFirstRequestOnCallingThread() throws Exception {
+        HedgingPolicy hedgingPolicy = HedgingPolicy.afterDelay(1000, 1.0);
+        List<Thread> threads = new CopyOnWriteArrayList<>();
+        HttpTransport transport = request -> {
+            threads.add(Thread.currentThread());
+            return new BufferedHttpResponse(200, new HashMap<>(), new byte[0]);
+        };
+
+        try (HttpResponse response = hedgingPolicy.execute(transport, new HttpRequest(server.url("/sometimes-slow"), "GET", null, null))) {
+            assertThat(response.getStatusCode(), is(200));
+        }
+
+        assertThat(threads, is(Collections.singletonList(Thread.currentThread())));
+        assertThat(hedgingPolicy.getHedges(), is(0L));
+    }
+
+    @Test
+    public void shouldNotHedgeNonIdempotentRequests() throws Exception {
+        HedgingPolicy hedgingPolicy = HedgingPolicy.afterDelay(50, 1.0);
+
+        command("POST", hedgingPolicy).execute();
+
+        assertThat(hedgingPolicy.getRequests(), is(0L));
+        assertThat(server.getRequestCount(), is(1));
+    }
+}
@@ -0,0 +1,97 @@
+package microservice.interservicecommunication.limiting;
+
+import microservice.interservicecommunication.stub.StubHttpServer;
+import microservicecommons.interservicecommunication.MicroserviceQueryCommand;
+import microservicecommons.interservicecommunication.exception.ApiCommunicationException;
+import microservicecommons.interservicecommunication.limiting.AdaptiveConcurrencyLimiter;
+import microservicecommons.interservicecommunication.model.QueryOptions;
+import microservicecommons.interservicecommunication.model.RetryOptions;
+import microservicecommons.interservicecommunication.transport.HttpRequest;
+import microservicecommons.interservicecommunication.transport.HttpResponse;
+import microservicecommons.interservicecommunication.transport.UrlConnectionHttpTransport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+    public static class Response {
+        public String field;
+    }
+
+    private StubHttpServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubHttpServer()
+                .respond("/slow", 200, "{\"field\":\"value\"}", 500)
+                .respond("/failing", 500, "broken");
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void shouldRejectRequestsOverLimit() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(AdaptiveConcurrencyLimiter.Algorithm.AIMD, 2, 1, 2, Long.MAX_VALUE);
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        List<Future<Response>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(executor.submit(() -> new MicroserviceQueryCommand<Response>("limitedCommand", server.url("/slow"), "GET", new HashMap<>(), Response.class, false, "",
+                    new RetryOptions(0, RetryOptions.RetryFunctionType.LINEAR), 5000, QueryOptions.DEFAULT.withConcurrencyLimiter(limiter)).execute()));
+        }
+        int overloaded = 0;
+        for (Future<Response> future : futures) {
+            try {
+                future.get();
+            } catch (Exception e) {
+                ApiCommunicationException cause = (ApiCommunicationException) e.getCause().getCause();
+                assertThat(cause.getProblemReason(), is(ApiCommunicationException.ProblemReason.OVERLOADED));
+                overloaded++;
+            }
+        }
+        executor.shutdown();
+
+        assertThat(overloaded, is(3));
+        assertThat(limiter.getRejected(), is(3L));
+        assertThat(server.getRequestCount(), is(2));
+    }
+
+    @Test
+    public void shouldLowerLimitOnFailures() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(AdaptiveConcurrencyLimiter.Algorithm.AIMD);
+        UrlConnectionHttpTransport transport = new UrlConnectionHttpTransport();
+        for (int i = 0; i < 5; i++) {
+            try (HttpResponse response = limiter.execute(transport, new HttpRequest(server.url("/failing"), "GET", null, null))) {
+                assertThat(response.getStatusCode(), is(500));
+            }
+        }
+
+        assertThat(limiter.getLimit(), is(lessThan(AdaptiveConcurrencyLimiter.DEFAULT_INITIAL_LIMIT)));
+        assertThat(limiter.getInFlight(), is(0));
+    }
+
+    @Test
+    public void shouldCountRequestInFlightUntilResponseIsClosed() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(AdaptiveConcurrencyLimiter.Algorithm.AIMD);
+        HttpResponse response = limiter.execute(new UrlConnectionHttpTransport(), new HttpRequest(server.url("/failing"), "GET", null, null));
+
+        assertThat(limiter.getInFlight(), is(1));
+        response.close();
+        response.close();
+        assertThat(limiter.getInFlight(), is(0));
+    }
+}
@@ -0,0 +1,117 @@
+package microservice.interservicecommunication.loadbalancing;
+
+import microservice.interservicecommunication.stub.StubHttpServer;
+import microservicecommons.interservicecommunication.MicroserviceQueryCommand;
+import microservicecommons.interservicecommunication.loadbalancing.FileServiceInstanceList;
+import microservicecommons.interservicecommunication.loadbalancing.LoadBalancer;
+import microservicecommons.interservicecommunication.loadbalancing.StaticServiceInstanceList;
+import microservicecommons.interservicecommunication.model.QueryOptions;
+import microservicecommons.interservicecommunication.model.RetryOptions;
+import microservicecommons.interservicecommunication.transport.HttpRequest;
+import microservicecommons.interservicecommunication.transport.HttpResponse;
+import microservicecommons.interservicecommunication.transport.UrlConnectionHttpTransport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class LoadBalancerTest {
+
+    public static class Response {
+        public String field;
+    }
+
+    private StubHttpServer healthy;
+
+    private StubHttpServer failing;
+
+    @Before
+    public void setUp() throws Exception {
+        healthy = new StubHttpServer().respond("/resource", 200, "{\"field\":\"value\"}");
+        failing = new StubHttpServer().respond("/resource", 500, "broken");
+    }
+
+    @After
+    public void tearDown() {
+        healthy.close();
+        failing.close();
+    }
+
+    private Response query(LoadBalancer loadBalancer) {
+        return new MicroserviceQueryCommand<Response>("loadBalancedCommand", loadBalancer, "/resource", "GET", new HashMap<>(), Response.class, false, "",
+                new RetryOptions(1, RetryOptions.RetryFunctionType.LINEAR).withDelays(0, 0), 5000, QueryOptions.DEFAULT).execute();
+    }
+
+    @Test
+    public void shouldSpreadRequestsRoundRobin() throws Exception {
+        StubHttpServer other = new StubHttpServer().respond("/resource", 200, "{\"field\":\"value\"}");
+        try {
+            LoadBalancer loadBalancer = new LoadBalancer("service", new StaticServiceInstanceList(Arrays.asList(healthy.url("/"), other.url("/"))), LoadBalancer.Strategy.ROUND_ROBIN);
+            for (int i = 0; i < 10; i++) {
+                assertThat(query(loadBalancer).field, is("value"));
+            }
+
+            assertThat(healthy.getRequestCount(), is(5));
+            assertThat(other.getRequestCount(), is(5));
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    public void shouldEjectFailingInstance() throws Exception {
+        LoadBalancer loadBalancer = new LoadBalancer("service", new StaticServiceInstanceList(Arrays.asList(healthy.url("/"), failing.url("/"))),
+                LoadBalancer.Strategy.ROUND_ROBIN, 2, 60000);
+        for (int i = 0; i < 20; i++) {
+            // failed tries are retried on another instance
+            assertThat(query(loadBalancer).field, is("value"));
+        }
+
+        assertThat(loadBalancer.getEjectedInstances(), is(Collections.singletonList(failing.url("/"))));
+        assertThat(failing.getRequestCount(), is(2));
+    }
+
+    @Test
+    public void shouldPreferInstanceWithoutFailures() throws Exception {
+        LoadBalancer loadBalancer = new LoadBalancer("service", new StaticServiceInstanceList(Arrays.asList(healthy.url("/"), failing.url("/"))),
+                LoadBalancer.Strategy.POWER_OF_TWO_CHOICES);
+        for (int i = 0; i < 20; i++) {
+            assertThat(query(loadBalancer).field, is("value"));
+        }
+
+        assertThat(failing.getRequestCount() <= 1, is(true));
+    }
+
+    @Test
+    public void shouldReadInstancesFromFile() throws Exception {
+        Path file = Files.createTempFile("instances", ".txt");
+        try {
+            Files.write(file, ("# instances of service\n" + healthy.url("/") + "\n").getBytes(StandardCharsets.UTF_8));
+            LoadBalancer loadBalancer = new LoadBalancer("service", new FileServiceInstanceList(file), LoadBalancer.Strategy.LEAST_OUTSTANDING);
+
+            assertThat(query(loadBalancer).field, is("value"));
+            assertThat(healthy.getRequestCount(), is(1));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void shouldCountRequestOutstandingUntilResponseIsClosed() throws Exception {
+        LoadBalancer loadBalancer = new LoadBalancer("service", new StaticServiceInstanceList(Collections.singletonList(healthy.url("/"))), LoadBalancer.Strategy.LEAST_OUTSTANDING);
+        HttpResponse response = loadBalancer.execute(new UrlConnectionHttpTransport(), new HttpRequest(healthy.url("/resource"), "GET", null, null));
+
+        assertThat(loadBalancer.getOutstandingRequests().get(healthy.url("/").toString()), is(1));
+        response.close();
+        assertThat(loadBalancer.getOutstandingRequests().get(healthy.url("/").toString()), is(0));
+    }
+}
@@ -0,0 +1,70 @@
+package microservice.interservicecommunication.metrics;
+
+import com.codahale.metrics.MetricRegistry;
+import microservice.interservicecommunication.stub.StubHttpServer;
+import microservicecommons.interservicecommunication.MicroserviceQueryCommand;
+import microservicecommons.interservicecommunication.metrics.CommandMetricsHolder;
+import microservicecommons.interservicecommunication.metrics.DropwizardCommandMetrics;
+import microservicecommons.interservicecommunication.model.RetryOptions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class DropwizardCommandMetricsTest {
+
+    public static class Response {
+        public String field;
+    }
+
+    private static final String BODY = "{\"field\":\"value\"}";
+
+    private StubHttpServer server;
+
+    private MetricRegistry registry;
+
+    @Before
+    public void setUp() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        server = new StubHttpServer().respond("/resource", 200, BODY).handle("/flaky", exchange -> {
+            // fails once, then succeeds
+            byte[] body = (requests.incrementAndGet() == 1 ? "broken" : BODY).getBytes();
+            exchange.sendResponseHeaders(requests.get() == 1 ? 500 : 200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        registry = new MetricRegistry();
+        CommandMetricsHolder.setDefault(new DropwizardCommandMetrics(registry));
+    }
+
+    @After
+    public void tearDown() {
+        CommandMetricsHolder.setDefault(null);
+        server.close();
+    }
+
+    @Test
+    public void shouldRecordPhasesOfCommand() throws Exception {
+        new MicroserviceQueryCommand<Response>("metricsCommand", server.url("/resource"), Response.class, false).execute();
+
+        assertThat(registry.timer("interservicecommunication.metricsCommand.connect").getCount(), is(1L));
+        assertThat(registry.timer("interservicecommunication.metricsCommand.timeToFirstByte").getCount(), is(1L));
+        assertThat(registry.timer("interservicecommunication.metricsCommand.bodyRead").getCount(), is(1L));
+        assertThat(registry.timer("interservicecommunication.metricsCommand.deserialization").getCount(), is(1L));
+        assertThat(registry.histogram("interservicecommunication.metricsCommand.responseSize").getSnapshot().getMax(), is((long) BODY.length()));
+    }
+
+    @Test
+    public void shouldCountRetriesPerProblemReason() throws Exception {
+        new MicroserviceQueryCommand<Response>("retryingCommand", server.url("/flaky"), Response.class, false,
+                new RetryOptions(1, RetryOptions.RetryFunctionType.LINEAR).withDelays(10, 10), 5000).execute();
+
+        assertThat(registry.counter("interservicecommunication.retryingCommand.retries.SERVER_ERROR").getCount(), is(1L));
+        assertThat(registry.timer("interservicecommunication.retryingCommand.retrySleep").getCount(), is(1L));
+        assertThat(registry.timer("interservicecommunication.retryingCommand.connect").getCount(), is(2L));
+    }
+}
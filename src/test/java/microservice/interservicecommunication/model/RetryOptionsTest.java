@@ -0,0 +1,88 @@
+package microservice.interservicecommunication.model;
+
+import microservice.interservicecommunication.stub.StubHttpServer;
+import microservicecommons.interservicecommunication.MicroserviceQueryCommand;
+import microservicecommons.interservicecommunication.exception.ApiCommunicationException;
+import microservicecommons.interservicecommunication.model.QueryOptions;
+import microservicecommons.interservicecommunication.model.RetryBudget;
+import microservicecommons.interservicecommunication.model.RetryOptions;
+import org.junit.Test;
+
+import java.util.HashMap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.both;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class RetryOptionsTest {
+
+    public static class Response {
+        public String field;
+    }
+
+    @Test
+    public void shouldKeepDelaysOfRetryFunctionWithoutJitter() {
+        RetryOptions linear = new RetryOptions(3, RetryOptions.RetryFunctionType.LINEAR);
+        RetryOptions exponential = new RetryOptions(3, RetryOptions.RetryFunctionType.EXPONENTIAL);
+
+        assertThat(linear.getDelayMillis(3), is(500L));
+        assertThat(exponential.getDelayMillis(1), is(500L));
+        assertThat(exponential.getDelayMillis(3), is(2000L));
+        assertThat(exponential.withDelays(100, 300).getDelayMillis(3), is(300L));
+    }
+
+    @Test
+    public void shouldRandomizeDelaysWithinBounds() {
+        RetryOptions full = new RetryOptions(10, RetryOptions.RetryFunctionType.EXPONENTIAL)
+                .withDelays(100, 1000)
+                .withJitter(RetryOptions.Jitter.FULL);
+        RetryOptions decorrelated = new RetryOptions(10, RetryOptions.RetryFunctionType.EXPONENTIAL)
+                .withDelays(100, 1000)
+                .withJitter(RetryOptions.Jitter.DECORRELATED);
+
+        long previousDelay = decorrelated.getBaseDelayMillis();
+        for (int retry = 1; retry <= 10; retry++) {
+            assertThat(full.getDelayMillis(retry), is(both(greaterThanOrEqualTo(0L)).and(lessThanOrEqualTo(Math.min(1000L, 50L << retry)))));
+            long delay = decorrelated.getDelayMillis(retry, previousDelay);
+            assertThat(delay, is(both(greaterThanOrEqualTo(100L)).and(lessThanOrEqualTo(Math.min(1000L, previousDelay * 3)))));
+            previousDelay = delay;
+        }
+    }
+
+    @Test
+    public void shouldLimitRetriesToBudget() {
+        RetryBudget budget = new RetryBudget(0.1, 2);
+        assertThat(budget.tryAcquireRetry(), is(true));
+        assertThat(budget.tryAcquireRetry(), is(true));
+        assertThat(budget.tryAcquireRetry(), is(false));
+        for (int i = 0; i < 10; i++) {
+            budget.recordRequest();
+        }
+        assertThat(budget.tryAcquireRetry(), is(true));
+        assertThat(budget.tryAcquireRetry(), is(false));
+    }
+
+    @Test
+    public void shouldNotRetryClientMistakes() throws Exception {
+        try (StubHttpServer server = new StubHttpServer()
+                .respond("/bad", 400, "invalid request")
+                .respond("/fail", 500, "something went wrong")) {
+            RetryOptions retryOptions = new RetryOptions(2, RetryOptions.RetryFunctionType.LINEAR)
+                    .withDelays(10, 10)
+                    .withTimeoutsPerTry(1000, 1000);
+
+            for (String path : new String[]{"/bad", "/fail"}) {
+                try {
+                    new MicroserviceQueryCommand<Response>("retryCommand", server.url(path), "GET", new HashMap<>(), Response.class, false, "",
+                            retryOptions, 5000, QueryOptions.DEFAULT).execute();
+                } catch (Exception e) {
+                    assertThat(((ApiCommunicationException) e.getCause()).getStatusCode(), is(path.equals("/bad") ? 400 : 500));
+                }
+            }
+            // one try for the client mistake, three for the server error
+            assertThat(server.getRequestCount(), is(4));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package microservice.interservicecommunication.smile;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategy;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import io.dropwizard.jackson.Jackson;
+import io.dropwizard.setup.Environment;
+import microservice.interservicecommunication.stub.StubHttpServer;
+import microservicecommons.interservicecommunication.MicroserviceQueryCommand;
+import microservicecommons.interservicecommunication.model.QueryOptions;
+import microservicecommons.interservicecommunication.model.RetryOptions;
+import microservicecommons.interservicecommunication.smile.SmileBundle;
+import microservicecommons.interservicecommunication.smile.SmileMediaType;
+import microservicecommons.interservicecommunication.smile.SmileMessageBodyProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SmileNegotiationTest {
+
+    public static class Response {
+        public String field;
+    }
+
+    private static final ObjectMapper SMILE_MAPPER = new ObjectMapper(new SmileFactory());
+
+    private StubHttpServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        Response response = new Response();
+        response.field = "value";
+        byte[] smile = SMILE_MAPPER.writeValueAsBytes(response);
+        byte[] json = "{\"field\":\"value\"}".getBytes(StandardCharsets.UTF_8);
+        server = new StubHttpServer().handle("/negotiating", exchange -> {
+            String accept = exchange.getRequestHeaders().getFirst("Accept");
+            boolean useSmile = accept != null && accept.contains(SmileMediaType.APPLICATION_SMILE);
+            exchange.getResponseHeaders().set("Content-Type", useSmile ? SmileMediaType.APPLICATION_SMILE : "application/json");
+            byte[] body = useSmile ? smile : json;
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        }).respond("/json-only", 200, "{\"field\":\"value\"}");
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    private Response query(String path) throws Exception {
+        return new MicroserviceQueryCommand<Response>("smileCommand", server.url(path), "GET", new HashMap<>(), Response.class, false, "",
+                new RetryOptions(0, RetryOptions.RetryFunctionType.LINEAR), 5000, QueryOptions.DEFAULT.withSmile(true)).execute();
+    }
+
+    @Test
+    public void shouldDecodeSmileResponse() throws Exception {
+        assertThat(query("/negotiating").field, is("value"));
+    }
+
+    @Test
+    public void shouldFallBackToJson() throws Exception {
+        assertThat(query("/json-only").field, is("value"));
+    }
+
+    @Test
+    public void shouldWriteAndReadSmileEntitiesInProvider() throws Exception {
+        SmileMessageBodyProvider provider = new SmileMessageBodyProvider(SMILE_MAPPER);
+        MediaType smile = MediaType.valueOf(SmileMediaType.APPLICATION_SMILE);
+        Response response = new Response();
+        response.field = "value";
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        provider.writeTo(response, Response.class, Response.class, null, smile, null, outputStream);
+        @SuppressWarnings("unchecked")
+        Response read = (Response) provider.readFrom((Class) Response.class, Response.class, null, smile, null, new ByteArrayInputStream(outputStream.toByteArray()));
+
+        assertThat(provider.isWriteable(Response.class, Response.class, null, MediaType.APPLICATION_JSON_TYPE), is(false));
+        assertThat(read.field, is("value"));
+    }
+
+    public static class Entity {
+        public String someField = "value";
+        public Optional<String> optionalField = Optional.of("present");
+    }
+
+    @Test
+    public void shouldWriteSmileWithConfigurationOfEnvironment() throws Exception {
+        Environment environment = new Environment("test", Jackson.newObjectMapper(), null, new MetricRegistry(), getClass().getClassLoader());
+        environment.getObjectMapper().setPropertyNamingStrategy(PropertyNamingStrategy.SNAKE_CASE);
+        new SmileBundle().run(environment);
+        SmileMessageBodyProvider provider = environment.jersey().getResourceConfig().getSingletons().stream()
+                .filter(SmileMessageBodyProvider.class::isInstance)
+                .map(SmileMessageBodyProvider.class::cast)
+                .findFirst().get();
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        provider.writeTo(new Entity(), Entity.class, Entity.class, null, MediaType.valueOf(SmileMediaType.APPLICATION_SMILE), null, outputStream);
+        Map<?, ?> written = SMILE_MAPPER.readValue(outputStream.toByteArray(), Map.class);
+
+        // naming strategy of the environment's mapper, Optional support of its Jdk8Module
+        assertThat(written.get("some_field"), is("value"));
+        assertThat(written.get("optional_field"), is("present"));
+    }
+}
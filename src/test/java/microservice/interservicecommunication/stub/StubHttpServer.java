@@ -0,0 +1,139 @@
+package microservice.interservicecommunication.stub;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * in-process http server on a free local port, answering registered paths with fixed responses, optionally delayed.
+ * Counts requests and the distinct client connections they came in on.
+ * Used by the tests and the end-to-end benchmarks, so both run without network access.
+ */
+public class StubHttpServer implements AutoCloseable {
+
+    static {
+        // otherwise headers and body of small responses are delayed by nagle's algorithm, skewing all latencies
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, StubResponse> responses = new ConcurrentHashMap<>();
+    private final Set<InetSocketAddress> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger requestCount = new AtomicInteger();
+
+    public StubHttpServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        executor = Executors.newFixedThreadPool(32);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public StubHttpServer respond(String path, int statusCode, String body) {
+        return respond(path, statusCode, body, 0);
+    }
+
+    /**
+     * @param latencyMillis time to wait before the response is sent, to simulate a slow service
+     */
+    public StubHttpServer respond(String path, int statusCode, String body, long latencyMillis) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        responses.put(path, new StubResponse(statusCode, bytes.length > 0 ? bytes.length : -1, outputStream -> outputStream.write(bytes), latencyMillis));
+        return this;
+    }
+
+    /**
+     * answers the path with a chunked body produced by the writer, so large bodies never have to be held in memory
+     */
+    public StubHttpServer respondStreaming(String path, int statusCode, BodyWriter writer) {
+        responses.put(path, new StubResponse(statusCode, 0, writer, 0));
+        return this;
+    }
+
+    /**
+     * answers the path with a custom handler, e.g. to react on request headers
+     */
+    public StubHttpServer handle(String path, HttpHandler handler) {
+        server.createContext(path, exchange -> {
+            requestCount.incrementAndGet();
+            connections.add(exchange.getRemoteAddress());
+            handler.handle(exchange);
+        });
+        return this;
+    }
+
+    public URL url(String pathAndQuery) throws MalformedURLException {
+        return new URL("http", "localhost", server.getAddress().getPort(), pathAndQuery);
+    }
+
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        connections.add(exchange.getRemoteAddress());
+        IOUtils.skip(exchange.getRequestBody(), Long.MAX_VALUE);
+        StubResponse response = responses.get(exchange.getRequestURI().getPath());
+        if (response == null) {
+            response = new StubResponse(404, -1, outputStream -> {}, 0);
+        }
+        if (response.latencyMillis > 0) {
+            try {
+                Thread.sleep(response.latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        // content length 0 means chunked, -1 means no body
+        exchange.sendResponseHeaders(response.statusCode, response.contentLength);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            response.writer.writeTo(outputStream);
+        }
+    }
+
+    public interface BodyWriter {
+        void writeTo(OutputStream outputStream) throws IOException;
+    }
+
+    private static class StubResponse {
+
+        private final int statusCode;
+        private final long contentLength;
+        private final BodyWriter writer;
+        private final long latencyMillis;
+
+        private StubResponse(int statusCode, long contentLength, BodyWriter writer, long latencyMillis) {
+            this.statusCode = statusCode;
+            this.contentLength = contentLength;
+            this.writer = writer;
+            this.latencyMillis = latencyMillis;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package microservice.interservicecommunication.transport;
+
+import microservice.interservicecommunication.stub.StubHttpServer;
+import microservicecommons.interservicecommunication.MicroserviceQueryCommand;
+import microservicecommons.interservicecommunication.model.QueryOptions;
+import microservicecommons.interservicecommunication.model.RetryOptions;
+import microservicecommons.interservicecommunication.transport.RequestBodies;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class CompressionTest {
+
+    public static class Response {
+        public String field;
+    }
+
+    public static class Echo {
+        public String body;
+        public String transferEncoding;
+    }
+
+    private StubHttpServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubHttpServer().handle("/compressed", exchange -> {
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            byte[] body = "{\"field\":\"value\"}".getBytes(StandardCharsets.UTF_8);
+            if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                exchange.sendResponseHeaders(200, 0);
+                try (OutputStream outputStream = new GZIPOutputStream(exchange.getResponseBody())) {
+                    outputStream.write(body);
+                }
+            } else {
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream outputStream = exchange.getResponseBody()) {
+                    outputStream.write(body);
+                }
+            }
+        }).handle("/echo", exchange -> {
+            InputStream requestBody = exchange.getRequestBody();
+            if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                requestBody = new GZIPInputStream(requestBody);
+            }
+            String body = IOUtils.toString(requestBody, StandardCharsets.UTF_8).replace("\"", "'");
+            String transferEncoding = exchange.getRequestHeaders().getFirst("Transfer-Encoding");
+            byte[] response = ("{\"body\":\"" + body + "\",\"transferEncoding\":\"" + transferEncoding + "\"}").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(response);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void shouldDecodeGzipResponse() throws Exception {
+        Response response = new MicroserviceQueryCommand<Response>("compressedCommand", server.url("/compressed"), Response.class, false).execute();
+
+        assertThat(response.field, is("value"));
+    }
+
+    @Test
+    public void shouldSendJsonBodyGzipped() throws Exception {
+        Response body = new Response();
+        body.field = "sent";
+
+        Echo echo = new MicroserviceQueryCommand<Echo>("echoCommand", server.url("/echo"), "POST", new HashMap<>(), Echo.class, false,
+                RequestBodies.gzip(RequestBodies.ofJson(body)), new RetryOptions(0, RetryOptions.RetryFunctionType.LINEAR), 5000, QueryOptions.DEFAULT).execute();
+
+        assertThat(echo.body, is("{'field':'sent'}"));
+        assertThat(echo.transferEncoding, is("chunked"));
+    }
+
+    @Test
+    public void shouldSendStreamBodyChunked() throws Exception {
+        Echo echo = new MicroserviceQueryCommand<Echo>("echoCommand", server.url("/echo"), "POST", new HashMap<>(), Echo.class, false,
+                RequestBodies.ofStream(new ByteArrayInputStream("streamed".getBytes(StandardCharsets.UTF_8)), "text/plain"),
+                new RetryOptions(0, RetryOptions.RetryFunctionType.LINEAR), 5000, QueryOptions.DEFAULT).execute();
+
+        assertThat(echo.body, is("streamed"));
+        assertThat(echo.transferEncoding, is("chunked"));
+    }
+}
@@ -0,0 +1,168 @@
+package microservice.interservicecommunication.transport;
+
+import microservice.interservicecommunication.stub.StubHttpServer;
+import microservicecommons.interservicecommunication.UrlJsonQueryCommand;
+import microservicecommons.interservicecommunication.exception.ApiCommunicationException;
+import microservicecommons.interservicecommunication.transport.HttpRequest;
+import microservicecommons.interservicecommunication.transport.HttpResponse;
+import microservicecommons.interservicecommunication.transport.HttpTransport;
+import microservicecommons.interservicecommunication.transport.UrlConnectionHttpTransport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.fail;
+
+public class UrlConnectionHttpTransportTest {
+
+    private static final int THREADS = 4;
+    private static final int REQUESTS_PER_THREAD = 250;
+    private static final long STUB_LATENCY_MILLIS = 5;
+    /**
+     * generous enough for a loaded build machine, a new connection per request or waiting for the pool exceeds it
+     */
+    private static final long P99_MARGIN_MILLIS = 200;
+
+    public static class Response {
+        public String field;
+    }
+
+    private StubHttpServer server;
+
+    private HttpTransport transport;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubHttpServer()
+                .respond("/ok", 200, "{\"field\":\"value\"}", STUB_LATENCY_MILLIS)
+                .respond("/fail", 500, "something went wrong");
+        transport = new UrlConnectionHttpTransport(THREADS, 1000, 5000);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    private UrlJsonQueryCommand<Response> command(URL url) {
+        return new UrlJsonQueryCommand<Response>("testCommand", url, Response.class, false, "testGroup") {
+            @Override
+            protected HttpTransport getTransport() {
+                return transport;
+            }
+        };
+    }
+
+    /**
+     * runs a load of successful and failing requests, and checks that connections are reused instead of opening a new one per request
+     * and that the p99 latency stays close to the latency of the stub
+     */
+    @Test
+    public void shouldReuseConnectionsUnderLoad() throws Exception {
+        URL ok = server.url("/ok");
+        URL fail = server.url("/fail");
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<List<Long>>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                List<Long> latencies = new ArrayList<>();
+                for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                    long start = System.nanoTime();
+                    if (i % 10 == 0) {
+                        try {
+                            command(fail).execute();
+                        } catch (Exception e) {
+                            assertThat(((ApiCommunicationException) e.getCause()).getProblemReason(), is(ApiCommunicationException.ProblemReason.SERVER_ERROR));
+                        }
+                    } else {
+                        assertThat(command(ok).execute().field, is("value"));
+                    }
+                    latencies.add(System.nanoTime() - start);
+                }
+                return latencies;
+            }));
+        }
+        List<Long> latencies = new ArrayList<>();
+        for (Future<List<Long>> future : futures) {
+            latencies.addAll(future.get());
+        }
+        executor.shutdown();
+
+        Collections.sort(latencies);
+        long p99Millis = TimeUnit.NANOSECONDS.toMillis(latencies.get((int) (latencies.size() * 0.99)));
+        assertThat(p99Millis, is(lessThan(STUB_LATENCY_MILLIS + P99_MARGIN_MILLIS)));
+        assertThat(server.getRequestCount(), is(THREADS * REQUESTS_PER_THREAD));
+        assertThat(server.getConnectionCount(), is(lessThanOrEqualTo(THREADS * 2)));
+    }
+
+    @Test
+    public void shouldDisconnectInsteadOfDrainingLargeBodies() throws Exception {
+        CountDownLatch finished = new CountDownLatch(1);
+        AtomicBoolean completelyWritten = new AtomicBoolean();
+        server.handle("/huge", exchange -> {
+            // 64MB, more than the socket buffers can take without the client reading
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                for (int i = 0; i < 1024; i++) {
+                    outputStream.write(new byte[64 * 1024]);
+                }
+                completelyWritten.set(true);
+            } catch (IOException e) {
+                // the client disconnected
+            } finally {
+                finished.countDown();
+            }
+        });
+
+        transport.execute(new HttpRequest(server.url("/huge"), "GET", null, null)).close();
+
+        assertThat(finished.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(completelyWritten.get(), is(false));
+    }
+
+    @Test
+    public void shouldWaitForFreeConnectionOnlyUpToConnectTimeoutOfRequest() throws Exception {
+        HttpTransport singleConnection = new UrlConnectionHttpTransport(1, 5000, 5000);
+        try (HttpResponse busy = singleConnection.execute(new HttpRequest(server.url("/ok"), "GET", null, null))) {
+            long start = System.currentTimeMillis();
+            try {
+                singleConnection.execute(new HttpRequest(server.url("/ok"), "GET", null, null, 100, null));
+                fail("request should have found no free connection");
+            } catch (ConnectException e) {
+                assertThat(System.currentTimeMillis() - start, is(lessThan(1000L)));
+            }
+        }
+    }
+
+    @Test
+    public void shouldMapErrorStatusOfLocalServer() throws Exception {
+        try {
+            command(server.url("/fail")).execute();
+            fail("command should have failed");
+        } catch (Exception acx) {
+            assertThat(acx.getCause(),is(instanceOf(ApiCommunicationException.class)));
+            ApiCommunicationException apiCommunicationException = (ApiCommunicationException) acx.getCause();
+            assertThat(apiCommunicationException.getProblemReason(),is(ApiCommunicationException.ProblemReason.SERVER_ERROR));
+            assertThat(apiCommunicationException.getMessage(),endsWith("something went wrong"));
+            assertThat(apiCommunicationException.getMessage(),containsString(server.url("/fail").toString()));
+        }
+    }
+}